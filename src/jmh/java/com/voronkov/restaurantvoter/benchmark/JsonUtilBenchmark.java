@@ -0,0 +1,61 @@
+package com.voronkov.restaurantvoter.benchmark;
+
+import com.voronkov.restaurantvoter.model.Role;
+import com.voronkov.restaurantvoter.model.User;
+import com.voronkov.restaurantvoter.to.RestaurantTo;
+import com.voronkov.restaurantvoter.utils.json.JsonUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class JsonUtilBenchmark {
+
+    @Param({"10", "1000"})
+    private int size;
+
+    private List<RestaurantTo> restaurants;
+    private List<User> users;
+    private String restaurantsJson;
+    private String usersJson;
+
+    @Setup
+    public void setUp() {
+        LocalDate today = LocalDate.now();
+        restaurants = new ArrayList<>(size);
+        users = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            restaurants.add(new RestaurantTo(i, "Restaurant " + i, today, i % 20));
+            users.add(new User(i, "user" + i + "@mail.ru", "password" + i, Role.ROLE_USER));
+        }
+        restaurantsJson = JsonUtil.writeValue(restaurants);
+        usersJson = JsonUtil.writeValue(users);
+    }
+
+    @Benchmark
+    public String writeRestaurants() {
+        return JsonUtil.writeValue(restaurants);
+    }
+
+    @Benchmark
+    public List<RestaurantTo> readRestaurants() {
+        return JsonUtil.readValues(restaurantsJson, RestaurantTo.class);
+    }
+
+    @Benchmark
+    public String writeUsers() {
+        return JsonUtil.writeValue(users);
+    }
+
+    @Benchmark
+    public List<User> readUsers() {
+        return JsonUtil.readValues(usersJson, User.class);
+    }
+}
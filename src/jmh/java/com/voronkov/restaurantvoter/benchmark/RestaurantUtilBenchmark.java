@@ -0,0 +1,53 @@
+package com.voronkov.restaurantvoter.benchmark;
+
+import com.voronkov.restaurantvoter.model.Restaurant;
+import com.voronkov.restaurantvoter.repository.CrudVoteRepository;
+import com.voronkov.restaurantvoter.service.VoteTally;
+import com.voronkov.restaurantvoter.to.RestaurantTo;
+import com.voronkov.restaurantvoter.utils.RestaurantUtil;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+//restaurants with votes from the in-memory counters, as GET /restaurants builds them
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RestaurantUtilBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    private int restaurants;
+
+    private List<Restaurant> list;
+    private VoteTally voteTally;
+
+    @Setup
+    public void setUp() {
+        LocalDate today = LocalDate.now();
+        Random random = new Random(42);
+        list = new ArrayList<>(restaurants);
+        for (int i = 0; i < restaurants; i++) {
+            list.add(new Restaurant(i, "Restaurant " + i, today.minusDays(i % 7), new ArrayList<>()));
+        }
+        //no votes in the database, the counters are seeded by the votes below
+        voteTally = new VoteTally(Mockito.mock(CrudVoteRepository.class));
+        voteTally.getVotes(list);
+        for (Restaurant restaurant : list) {
+            for (int v = random.nextInt(20); v > 0; v--) {
+                voteTally.increment(restaurant.getCreatedDate(), restaurant.getId());
+            }
+        }
+    }
+
+    @Benchmark
+    public List<RestaurantTo> getRestaurantWithVotes() {
+        return RestaurantUtil.getRestaurantWithVotes(list, voteTally);
+    }
+}
@@ -0,0 +1,50 @@
+package com.voronkov.restaurantvoter.benchmark;
+
+import com.voronkov.restaurantvoter.model.Role;
+import com.voronkov.restaurantvoter.model.User;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+//User as a hash key: hashCode and equals go over the email, the password and the roles
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class UserBenchmark {
+
+    @Param({"1000"})
+    private int users;
+
+    private Set<User> set;
+    private User user;
+    private User copy;
+
+    @Setup
+    public void setUp() {
+        set = new HashSet<>();
+        for (int i = 0; i < users; i++) {
+            set.add(new User(i, "user" + i + "@mail.ru", "password" + i, Role.ROLE_USER));
+        }
+        user = new User(users / 2, "user" + users / 2 + "@mail.ru", "password" + users / 2, Role.ROLE_USER, Role.ROLE_ADMIN);
+        copy = new User(user);
+    }
+
+    @Benchmark
+    public int hashCodeOf() {
+        return user.hashCode();
+    }
+
+    @Benchmark
+    public boolean equalsCopy() {
+        return user.equals(copy);
+    }
+
+    @Benchmark
+    public boolean setContains() {
+        return set.contains(copy);
+    }
+}
@@ -0,0 +1,55 @@
+package com.voronkov.restaurantvoter.benchmark;
+
+import com.voronkov.restaurantvoter.RestaurantVoterApplication;
+import com.voronkov.restaurantvoter.service.RestaurantService;
+import com.voronkov.restaurantvoter.service.VotingWindow;
+import com.voronkov.restaurantvoter.to.VoteResultTo;
+import com.voronkov.restaurantvoter.utils.TimeUtil;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+//RestaurantService.vote in the whole application over the embedded H2 of data.sql
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class VoteBenchmark {
+
+    //user@gmail.com and two of today's restaurants
+    private static final int USER_ID = 100001;
+    private static final int FIRST = 7;
+    private static final int SECOND = 8;
+
+    private ConfigurableApplicationContext context;
+    private RestaurantService restaurantService;
+    private VotingWindow votingWindow;
+    private boolean first;
+
+    @Setup
+    public void setUp() {
+        //the voting is open the whole day whenever the benchmark is run
+        TimeUtil.limitHourForVote = 24;
+        context = SpringApplication.run(RestaurantVoterApplication.class,
+                "--server.port=0", "--spring.jpa.show-sql=false", "--logging.level.root=WARN");
+        restaurantService = context.getBean(RestaurantService.class);
+        votingWindow = context.getBean(VotingWindow.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    //every vote moves the user's choice, a repeated vote for the same restaurant would take it back
+    @Benchmark
+    public VoteResultTo vote() {
+        first = !first;
+        int restaurantId = first ? FIRST : SECOND;
+        //the same path as the controller: the window is checked before the transaction
+        return restaurantService.vote(USER_ID, restaurantId, votingWindow.check(restaurantId));
+    }
+}
@@ -0,0 +1,59 @@
+package com.voronkov.restaurantvoter.benchmark;
+
+import com.voronkov.restaurantvoter.repository.CrudRestaurantRepository;
+import com.voronkov.restaurantvoter.service.VotingWindow;
+import com.voronkov.restaurantvoter.utils.TimeUtil;
+import com.voronkov.restaurantvoter.utils.exception.DontCanVoteException;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.*;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//the vote time check, which replaced TimeUtil.canVote: once in and once after the voting time
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class VotingWindowBenchmark {
+
+    private static final int RESTAURANT_ID = 7;
+
+    private VotingWindow open;
+    private VotingWindow closed;
+
+    @Setup
+    public void setUp() {
+        LocalDate today = LocalDate.now();
+        open = votingWindow(today.atTime(TimeUtil.limitHourForVote - 1, 0));
+        closed = votingWindow(today.atTime(TimeUtil.limitHourForVote, 30));
+        //today's restaurant ids are read on the first check
+        open.check(RESTAURANT_ID);
+    }
+
+    @Benchmark
+    public LocalDate checkInTime() {
+        return open.check(RESTAURANT_ID);
+    }
+
+    @Benchmark
+    public boolean checkTooLate() {
+        try {
+            closed.check(RESTAURANT_ID);
+            return true;
+        } catch (DontCanVoteException e) {
+            return false;
+        }
+    }
+
+    private static VotingWindow votingWindow(LocalDateTime now) {
+        CrudRestaurantRepository repository = Mockito.mock(CrudRestaurantRepository.class);
+        Mockito.when(repository.getIdsByDate(now.toLocalDate())).thenReturn(List.of(7, 8, 9, 10, 11));
+        ZoneId zone = ZoneId.systemDefault();
+        return new VotingWindow(repository, Mockito.mock(PlatformTransactionManager.class),
+                Clock.fixed(now.atZone(zone).toInstant(), zone));
+    }
+}
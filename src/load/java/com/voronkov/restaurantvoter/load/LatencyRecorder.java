@@ -0,0 +1,51 @@
+package com.voronkov.restaurantvoter.load;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+//latencies of one endpoint in one phase; every worker thread records into its own recorder, they are merged at the end
+public class LatencyRecorder {
+
+    private long[] nanos = new long[1024];
+    private int count;
+    private int errors;
+
+    public void record(long elapsedNanos, boolean expected) {
+        if (count == nanos.length) {
+            nanos = Arrays.copyOf(nanos, count * 2);
+        }
+        nanos[count++] = elapsedNanos;
+        if (!expected) {
+            errors++;
+        }
+    }
+
+    public void addAll(LatencyRecorder other) {
+        for (int i = 0; i < other.count; i++) {
+            record(other.nanos[i], true);
+        }
+        errors += other.errors;
+    }
+
+    public String report(String name, double seconds) {
+        long[] sorted = Arrays.copyOf(nanos, count);
+        Arrays.sort(sorted);
+        return String.format(Locale.ROOT, "%-40s %9d %7d %10.1f %9.2f %9.2f %9.2f %9.2f",
+                name, count, errors, count / seconds,
+                percentile(sorted, 0.50), percentile(sorted, 0.99), percentile(sorted, 0.999),
+                count == 0 ? 0 : sorted[count - 1] / 1e6);
+    }
+
+    public static String header() {
+        return String.format(Locale.ROOT, "%-40s %9s %7s %10s %9s %9s %9s %9s",
+                "endpoint", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+}
@@ -0,0 +1,196 @@
+package com.voronkov.restaurantvoter.load;
+
+import com.voronkov.restaurantvoter.DatasetGenerator;
+import com.voronkov.restaurantvoter.RestaurantVoterApplication;
+import com.voronkov.restaurantvoter.model.Restaurant;
+import com.voronkov.restaurantvoter.service.RestaurantService;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.voronkov.restaurantvoter.utils.TimeUtil.limitHourForVote;
+
+/**
+ * The lunch rush against the whole application on a random port, with N seeded users and M of today's restaurants,
+ * and optionally the given number of past days of restaurants, meals and votes, all generated from the seed.
+ * The application takes the time from a MutableClock, moved by the phases:
+ * <ul>
+ * <li>polls - 10:30, every worker polls GET /restaurants</li>
+ * <li>rush - 10:50, the first rush.burst ms of every second every worker votes, the rest of it polls</li>
+ * <li>late - just after the cutoff, every worker keeps voting and is refused</li>
+ * </ul>
+ * Prints requests, errors, throughput and p50/p99/p99.9/max latency per endpoint and phase.
+ * Arguments are key=value, see {@link #DEFAULTS}; run by mvn -Pload verify -Dload.args="users=10000 threads=64".
+ */
+public class LunchRushLoadTest {
+
+    private static final Map<String, String> DEFAULTS = Map.of(
+            "users", "1000",
+            "restaurants", "20",
+            "history", "0",
+            "seed", "42",
+            "threads", "32",
+            "polls", "20",
+            "rush", "20",
+            "rush.burst", "300",
+            "late", "10");
+
+    private static final int NOT_ACCEPTABLE = 406;
+
+    private final Map<String, String> options;
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    private String baseUrl;
+    private List<String> authorizations;
+    private List<Integer> restaurantIds;
+
+    private LunchRushLoadTest(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>(DEFAULTS);
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            if (option.length != 2 || !DEFAULTS.containsKey(option[0])) {
+                throw new IllegalArgumentException("Unknown option " + arg + ", expected key=value with keys " + DEFAULTS.keySet());
+            }
+            options.put(option[0], option[1]);
+        }
+        new LunchRushLoadTest(options).run();
+    }
+
+    private int option(String name) {
+        return Integer.parseInt(options.get(name));
+    }
+
+    private void run() throws Exception {
+        ZoneId zone = ZoneId.systemDefault();
+        MutableClock clock = new MutableClock(zone, Instant.now());
+        clock.setTime(LocalTime.of(10, 30));
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(RestaurantVoterApplication.class)
+                .initializers(ctx -> ctx.getBeanFactory().registerSingleton("clock", clock))
+                .run("--server.port=0", "--spring.jpa.show-sql=false", "--logging.level.root=WARN")) {
+            baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+            seed(context, LocalDate.now(clock));
+
+            List<String> report = new ArrayList<>();
+            report.add(LatencyRecorder.header());
+            report.addAll(phase("polls", option("polls"), this::poll));
+
+            clock.setTime(LocalTime.of(10, 50));
+            int burst = option("rush.burst");
+            report.addAll(phase("rush", option("rush"), worker -> {
+                if (System.currentTimeMillis() % 1000 < burst) {
+                    vote(worker, 200);
+                } else {
+                    poll(worker);
+                }
+            }));
+
+            clock.setTime(LocalTime.of(limitHourForVote, 0, 5));
+            report.addAll(phase("late", option("late"), worker -> vote(worker, NOT_ACCEPTABLE)));
+
+            System.out.println();
+            System.out.println("users=" + option("users") + " restaurants=" + option("restaurants")
+                    + " history=" + option("history") + " threads=" + option("threads"));
+            report.forEach(System.out::println);
+        }
+    }
+
+    //users and past days go straight to the database, today's restaurants through the service so the application learns about them
+    private void seed(ConfigurableApplicationContext context, LocalDate today) {
+        int users = option("users");
+        int restaurants = option("restaurants");
+        int history = option("history");
+        DatasetGenerator generator = new DatasetGenerator(context.getBean(JdbcTemplate.class), option("seed"), 1000);
+        List<Integer> userIds = generator.users(users);
+        if (history > 0) {
+            generator.days(today.minusDays(history), history, restaurants, 5, users / 2, userIds);
+        }
+        authorizations = IntStream.range(0, users)
+                .mapToObj(i -> "Basic " + Base64.getEncoder().encodeToString(
+                        (DatasetGenerator.email(i) + ":" + DatasetGenerator.PASSWORD).getBytes(StandardCharsets.UTF_8)))
+                .collect(Collectors.toList());
+
+        RestaurantService restaurantService = context.getBean(RestaurantService.class);
+        restaurantIds = IntStream.range(0, restaurants)
+                .mapToObj(i -> restaurantService.save(new Restaurant(null, "Load " + i, today, new ArrayList<>())).getId())
+                .collect(Collectors.toList());
+    }
+
+    private List<String> phase(String name, int seconds, Action action) throws Exception {
+        int threads = option("threads");
+        long end = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Worker>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Worker worker = new Worker(i);
+            futures.add(executor.submit(() -> {
+                while (System.nanoTime() < end) {
+                    action.run(worker);
+                }
+                return worker;
+            }));
+        }
+        Map<String, LatencyRecorder> merged = new TreeMap<>();
+        for (Future<Worker> future : futures) {
+            future.get().recorders.forEach((endpoint, recorder) ->
+                    merged.computeIfAbsent(endpoint, e -> new LatencyRecorder()).addAll(recorder));
+        }
+        executor.shutdown();
+        return merged.entrySet().stream()
+                .map(e -> e.getValue().report(name + ": " + e.getKey(), seconds))
+                .collect(Collectors.toList());
+    }
+
+    private void poll(Worker worker) throws Exception {
+        send(worker, "GET /restaurants/today", "/restaurants/today", 200);
+    }
+
+    private void vote(Worker worker, int expectedStatus) throws Exception {
+        int restaurantId = restaurantIds.get(worker.random.nextInt(restaurantIds.size()));
+        send(worker, "GET /restaurants/vote/{id}", "/restaurants/vote/" + restaurantId, expectedStatus);
+    }
+
+    private void send(Worker worker, String endpoint, String path, int expectedStatus) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Authorization", authorizations.get(worker.random.nextInt(authorizations.size())))
+                .GET()
+                .build();
+        long start = System.nanoTime();
+        int status;
+        try {
+            status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (java.io.IOException e) {
+            status = -1;
+        }
+        worker.recorders.computeIfAbsent(endpoint, e -> new LatencyRecorder())
+                .record(System.nanoTime() - start, status == expectedStatus);
+    }
+
+    private interface Action {
+        void run(Worker worker) throws Exception;
+    }
+
+    private static class Worker {
+
+        private final Random random;
+        private final Map<String, LatencyRecorder> recorders = new HashMap<>();
+
+        private Worker(int seed) {
+            this.random = new Random(seed);
+        }
+    }
+}
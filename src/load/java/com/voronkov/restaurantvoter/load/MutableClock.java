@@ -0,0 +1,38 @@
+package com.voronkov.restaurantvoter.load;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+
+//the application's clock during a load test, moved from phase to phase by the harness
+public class MutableClock extends Clock {
+
+    private final ZoneId zone;
+    private volatile Instant instant;
+
+    public MutableClock(ZoneId zone, Instant instant) {
+        this.zone = zone;
+        this.instant = instant;
+    }
+
+    //today at the given time
+    public void setTime(LocalTime time) {
+        instant = instant.atZone(zone).toLocalDate().atTime(time).atZone(zone).toInstant();
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return new MutableClock(zone, instant);
+    }
+
+    @Override
+    public Instant instant() {
+        return instant;
+    }
+}
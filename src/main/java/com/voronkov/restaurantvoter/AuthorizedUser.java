@@ -16,6 +16,19 @@ public class AuthorizedUser extends org.springframework.security.core.userdetail
         this.roles = user.getRoles();
     }
 
+    public AuthorizedUser(AuthorizedUser user) {
+        super(user.getUsername(), user.getPassword(), user.isEnabled(), true, true, true, user.getRoles());
+        this.id = user.getId();
+        this.roles = user.getRoles();
+    }
+
+    //for signed tokens, there is no password to check
+    public AuthorizedUser(int id, String email, Set<Role> roles) {
+        super(email, "", true, true, true, true, roles);
+        this.id = id;
+        this.roles = roles;
+    }
+
     public int getId() {
         return id;
     }
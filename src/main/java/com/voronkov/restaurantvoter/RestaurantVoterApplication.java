@@ -2,13 +2,26 @@ package com.voronkov.restaurantvoter;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
 import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import java.time.Clock;
 
 @SpringBootApplication
 @EnableCaching
+@EnableScheduling
 public class RestaurantVoterApplication {
 
 	public static void main(String[] args) {
 		SpringApplication.run(RestaurantVoterApplication.class, args);
 	}
+
+	//everything deciding on the current time takes it from here, the load test brings its own
+	@Bean
+	@ConditionalOnMissingBean
+	public Clock clock() {
+		return Clock.systemDefaultZone();
+	}
 }
@@ -0,0 +1,18 @@
+package com.voronkov.restaurantvoter.configuration;
+
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+
+@Configuration
+public class CacheConfig {
+
+    //Hibernate regions live in the same Ehcache manager as the Spring caches instead of a second one
+    @Bean
+    public HibernatePropertiesCustomizer secondLevelCacheManager(CacheManager cacheManager) {
+        return properties -> properties.put(ConfigSettings.CACHE_MANAGER, cacheManager);
+    }
+}
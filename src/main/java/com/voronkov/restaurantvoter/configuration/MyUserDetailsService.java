@@ -2,7 +2,9 @@ package com.voronkov.restaurantvoter.configuration;
 
 import com.voronkov.restaurantvoter.AuthorizedUser;
 import com.voronkov.restaurantvoter.model.User;
+import com.voronkov.restaurantvoter.service.AuthorizedUserCache;
 import com.voronkov.restaurantvoter.service.UserService;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
@@ -12,13 +14,21 @@ import org.springframework.stereotype.Service;
 public class MyUserDetailsService implements UserDetailsService {
 
     final UserService userService;
+    final AuthorizedUserCache authorizedUserCache;
 
-    public MyUserDetailsService(UserService userService) {
+    public MyUserDetailsService(UserService userService, AuthorizedUserCache authorizedUserCache) {
         this.userService = userService;
+        this.authorizedUserCache = authorizedUserCache;
     }
 
+    //every password login and basic request comes here, token requests do not
     @Override
+    @Timed("restaurantvoter.authentication")
     public UserDetails loadUserByUsername(String email) throws UsernameNotFoundException {
+        return authorizedUserCache.get(email, this::load);
+    }
+
+    private AuthorizedUser load(String email) {
         User user =  userService.findByEmail(email);
         if (user == null) {
             throw new UsernameNotFoundException(email);
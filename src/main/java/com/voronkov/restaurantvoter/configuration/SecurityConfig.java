@@ -8,6 +8,7 @@ import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.crypto.password.NoOpPasswordEncoder;
+import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
 
 @Configuration
 @EnableWebSecurity
@@ -16,17 +17,25 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
 
     //для данных из бд
     private final MyUserDetailsService myUserDetailsService;
+    private final TokenService tokenService;
 
     @Autowired
-    public SecurityConfig(MyUserDetailsService myUserDetailsService) {
+    public SecurityConfig(MyUserDetailsService myUserDetailsService, TokenService tokenService) {
         this.myUserDetailsService = myUserDetailsService;
+        this.tokenService = tokenService;
     }
 
     @Override
     protected void configure(HttpSecurity http) throws Exception {
+        //подписанный токен проверяется без обращения к бд
+        http.addFilterBefore(new TokenAuthenticationFilter(tokenService), BasicAuthenticationFilter.class);
+        http.securityContext().securityContextRepository(new TokenSecurityContextRepository());
+
         http.httpBasic().and()
                     .authorizeRequests()
                     .antMatchers("/**/admin/**").hasRole("ADMIN")
+                    .antMatchers("/actuator/health").permitAll()
+                    .antMatchers("/actuator/**").hasRole("ADMIN")
                     .antMatchers("/users/profile/register").anonymous()
                     .anyRequest().authenticated()
                 .and().csrf().disable();
@@ -0,0 +1,48 @@
+package com.voronkov.restaurantvoter.configuration;
+
+import com.voronkov.restaurantvoter.AuthorizedUser;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/*
+ * authenticates "Authorization: Bearer <token>" requests, invalid tokens are left to the entry point (401);
+ * the context of such a request is never kept in the http session, see TokenSecurityContextRepository
+ */
+public class TokenAuthenticationFilter extends OncePerRequestFilter {
+
+    private static final String BEARER = "Bearer ";
+
+    private final TokenService tokenService;
+
+    public TokenAuthenticationFilter(TokenService tokenService) {
+        this.tokenService = tokenService;
+    }
+
+    public static boolean isBearer(HttpServletRequest request) {
+        String header = request.getHeader(HttpHeaders.AUTHORIZATION);
+        return header != null && header.startsWith(BEARER);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (isBearer(request)) {
+            String token = request.getHeader(HttpHeaders.AUTHORIZATION).substring(BEARER.length()).trim();
+            AuthorizedUser user = tokenService.verify(token);
+            if (user != null) {
+                //not a password authentication, so it cannot issue tokens
+                SecurityContextHolder.getContext().setAuthentication(
+                        new PreAuthenticatedAuthenticationToken(user, token, user.getAuthorities()));
+            }
+        }
+        chain.doFilter(request, response);
+    }
+}
@@ -0,0 +1,36 @@
+package com.voronkov.restaurantvoter.configuration;
+
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.context.HttpRequestResponseHolder;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
+import org.springframework.security.web.context.SecurityContextRepository;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+//bearer requests neither read nor write the http session, the rest keep the session of the form login
+public class TokenSecurityContextRepository implements SecurityContextRepository {
+
+    private final SecurityContextRepository sessionRepository = new HttpSessionSecurityContextRepository();
+
+    @Override
+    public SecurityContext loadContext(HttpRequestResponseHolder requestResponseHolder) {
+        if (TokenAuthenticationFilter.isBearer(requestResponseHolder.getRequest())) {
+            return SecurityContextHolder.createEmptyContext();
+        }
+        return sessionRepository.loadContext(requestResponseHolder);
+    }
+
+    @Override
+    public void saveContext(SecurityContext context, HttpServletRequest request, HttpServletResponse response) {
+        if (!TokenAuthenticationFilter.isBearer(request)) {
+            sessionRepository.saveContext(context, request, response);
+        }
+    }
+
+    @Override
+    public boolean containsContext(HttpServletRequest request) {
+        return !TokenAuthenticationFilter.isBearer(request) && sessionRepository.containsContext(request);
+    }
+}
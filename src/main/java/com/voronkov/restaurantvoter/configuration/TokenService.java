@@ -0,0 +1,114 @@
+package com.voronkov.restaurantvoter.configuration;
+
+import com.voronkov.restaurantvoter.AuthorizedUser;
+import com.voronkov.restaurantvoter.model.Role;
+import com.voronkov.restaurantvoter.to.TokenTo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.EnumSet;
+import java.util.stream.Collectors;
+
+/**
+ * Short-lived access tokens: {@code base64url(id|email|roles|expiresAt).base64url(HmacSHA256)}.
+ * A token is verified by its signature only, the user is not read from the database:
+ * a user disabled, deleted or with a new password keeps a token issued before until it expires.
+ * Tokens are issued for password logins only, so a token cannot renew itself.
+ */
+@Service
+public class TokenService {
+
+    private static Logger log = LoggerFactory.getLogger(TokenService.class);
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec key;
+    private final Duration ttl;
+    private final Clock clock;
+
+    //Mac is not thread-safe
+    private final ThreadLocal<Mac> mac = ThreadLocal.withInitial(this::createMac);
+
+    public TokenService(@Value("${restaurantvoter.token.secret:}") String secret,
+                        @Value("${restaurantvoter.token.ttl:PT15M}") Duration ttl,
+                        Clock clock) {
+        byte[] secretBytes;
+        if (secret.isEmpty()) {
+            log.warn("LOG restaurantvoter.token.secret не задан, токены действуют до перезапуска");
+            secretBytes = new byte[32];
+            new SecureRandom().nextBytes(secretBytes);
+        } else {
+            secretBytes = secret.getBytes(StandardCharsets.UTF_8);
+        }
+        this.key = new SecretKeySpec(secretBytes, ALGORITHM);
+        this.ttl = ttl;
+        this.clock = clock;
+    }
+
+    public TokenTo issue(AuthorizedUser user) {
+        Instant expiresAt = clock.instant().plus(ttl);
+        String roles = user.getRoles().stream().map(Role::name).collect(Collectors.joining(","));
+        String payload = encode((user.getId() + "|" + user.getUsername() + "|" + roles + "|" + expiresAt.getEpochSecond())
+                .getBytes(StandardCharsets.UTF_8));
+        return new TokenTo(payload + "." + encode(sign(payload)), expiresAt);
+    }
+
+    //null when the token is malformed, forged or expired
+    public AuthorizedUser verify(String token) {
+        int dot = token.indexOf('.');
+        if (dot < 0) {
+            return null;
+        }
+        String payload = token.substring(0, dot);
+        try {
+            if (!MessageDigest.isEqual(sign(payload), DECODER.decode(token.substring(dot + 1)))) {
+                return null;
+            }
+            String[] parts = new String(DECODER.decode(payload), StandardCharsets.UTF_8).split("\\|", -1);
+            if (parts.length != 4 || clock.instant().getEpochSecond() >= Long.parseLong(parts[3])) {
+                return null;
+            }
+            EnumSet<Role> roles = EnumSet.noneOf(Role.class);
+            for (String role : parts[2].split(",")) {
+                if (!role.isEmpty()) {
+                    roles.add(Role.valueOf(role));
+                }
+            }
+            return new AuthorizedUser(Integer.parseInt(parts[0]), parts[1], roles);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private byte[] sign(String payload) {
+        return mac.get().doFinal(payload.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private Mac createMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot create " + ALGORITHM, e);
+        }
+    }
+
+    private static String encode(byte[] bytes) {
+        return ENCODER.encodeToString(bytes);
+    }
+}
@@ -2,12 +2,23 @@ package com.voronkov.restaurantvoter.controller;
 
 import com.voronkov.restaurantvoter.model.Restaurant;
 import com.voronkov.restaurantvoter.model.User;
+import com.voronkov.restaurantvoter.service.AuthorizedUserCache;
+import com.voronkov.restaurantvoter.service.CacheMonitor;
+import com.voronkov.restaurantvoter.service.RestaurantPageCache;
 import com.voronkov.restaurantvoter.service.RestaurantService;
+import com.voronkov.restaurantvoter.service.SingleFlight;
+import com.voronkov.restaurantvoter.service.UserCache;
 import com.voronkov.restaurantvoter.service.UserService;
+import com.voronkov.restaurantvoter.to.CacheStatsTo;
+import com.voronkov.restaurantvoter.to.CacheUsageTo;
+import com.voronkov.restaurantvoter.to.FlightStatsTo;
+import com.voronkov.restaurantvoter.to.PageTo;
+import com.voronkov.restaurantvoter.to.UserTo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -17,9 +28,12 @@ import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import javax.validation.Valid;
 import java.net.URI;
+import java.time.Clock;
 import java.time.LocalDate;
 import java.util.List;
 
+import static com.voronkov.restaurantvoter.controller.RestaurantRestController.NEXT_CURSOR_HEADER;
+
 @RestController
 @RequestMapping("/admin")
 public class AdminRestController {
@@ -28,11 +42,31 @@ public class AdminRestController {
 
     private final RestaurantService restaurantService;
     private final UserService userService;
+    private final AuthorizedUserCache authorizedUserCache;
+    private final RestaurantPageCache restaurantPageCache;
+    private final UserCache userCache;
+    private final CacheMonitor cacheMonitor;
+    private final SingleFlight singleFlight;
+    private final Clock clock;
+
+    @Value("${restaurantvoter.page.default-size:20}")
+    private int defaultPageSize;
+
+    @Value("${restaurantvoter.page.max-size:100}")
+    private int maxPageSize;
 
     @Autowired
-    public AdminRestController(RestaurantService restaurantService, UserService userService) {
+    public AdminRestController(RestaurantService restaurantService, UserService userService, AuthorizedUserCache authorizedUserCache,
+                               RestaurantPageCache restaurantPageCache, UserCache userCache, CacheMonitor cacheMonitor,
+                               SingleFlight singleFlight, Clock clock) {
         this.restaurantService = restaurantService;
         this.userService = userService;
+        this.authorizedUserCache = authorizedUserCache;
+        this.restaurantPageCache = restaurantPageCache;
+        this.userCache = userCache;
+        this.cacheMonitor = cacheMonitor;
+        this.singleFlight = singleFlight;
+        this.clock = clock;
     }
 
     @PostMapping("/restaurants")
@@ -42,7 +76,7 @@ public class AdminRestController {
             return new ResponseEntity<>(HttpStatus.UNPROCESSABLE_ENTITY);
         }
         if (restaurant.getCreatedDate() == null) {
-            restaurant.setCreatedDate(LocalDate.now());
+            restaurant.setCreatedDate(LocalDate.now(clock));
         }
         Restaurant created = restaurantService.save(restaurant);
         log.info("LOG новое кафе c id: {} создано", restaurant.getId());
@@ -57,7 +91,7 @@ public class AdminRestController {
     @ResponseStatus(value = HttpStatus.NO_CONTENT)
     public void updateRestaurant(@PathVariable("id") Restaurant restaurantFromDb, @Valid @RequestBody Restaurant restaurant) {
         //restaurantFromDb - кафе из бд, которе редактируем, берём его значения и заменяем новыми, всеми кроме id и даты
-        BeanUtils.copyProperties(restaurant, restaurantFromDb, "id", "date", "votes");
+        BeanUtils.copyProperties(restaurant, restaurantFromDb, "id", "createdDate");
         log.info("LOG кафе с id: {} обновлено", restaurantFromDb.getId());
         restaurantService.update(restaurantFromDb);
     }
@@ -71,10 +105,17 @@ public class AdminRestController {
 
     //FOR USERS
 
+    //the next page is at ?cursor=<X-Next-Cursor>, no header on the last page
     @GetMapping("/users")
-    public List<User> getAllUsers() {
+    public ResponseEntity<List<UserTo>> getAllUsers(@RequestParam(name = "cursor", required = false) String cursor,
+                                                    @RequestParam(name = "size", required = false) Integer size) {
         log.info("LOG Получен список пользователей");
-        return userService.getAll();
+        PageTo<UserTo> page = userService.getPage(cursor, size == null ? defaultPageSize : Math.max(1, Math.min(size, maxPageSize)));
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(page.getContent());
     }
 
     @GetMapping("/users/{id}")
@@ -114,4 +155,35 @@ public class AdminRestController {
         log.info("getByEmail {}", email);
         return userService.findByEmail(email);
     }
+
+    //FOR CACHES
+
+    //every cache as seen by the store, the endpoints below count hits of the application lookups
+    @GetMapping("/cache")
+    public List<CacheUsageTo> getCacheUsage() {
+        return cacheMonitor.getUsage();
+    }
+
+    @GetMapping("/cache/principals")
+    public CacheStatsTo getPrincipalsCacheStats() {
+        return authorizedUserCache.getStats();
+    }
+
+    @GetMapping("/cache/restaurantPages")
+    public CacheStatsTo getRestaurantPagesCacheStats() {
+        return restaurantPageCache.getStats();
+    }
+
+    @GetMapping("/cache/users")
+    public CacheStatsTo getUsersCacheStats() {
+        return userCache.getStats();
+    }
+
+    //FOR LOADS
+
+    //how many concurrent identical loads were served by one database call
+    @GetMapping("/flights")
+    public List<FlightStatsTo> getFlightStats() {
+        return singleFlight.getStats();
+    }
 }
@@ -1,24 +1,47 @@
 package com.voronkov.restaurantvoter.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.voronkov.restaurantvoter.AuthorizedUser;
 import com.voronkov.restaurantvoter.model.Meal;
-import com.voronkov.restaurantvoter.model.Restaurant;
-import com.voronkov.restaurantvoter.model.User;
+import com.voronkov.restaurantvoter.service.DataVersion;
 import com.voronkov.restaurantvoter.service.RestaurantService;
+import com.voronkov.restaurantvoter.service.RestaurantSnapshot;
+import com.voronkov.restaurantvoter.service.VoteStream;
+import com.voronkov.restaurantvoter.service.VoteTally;
+import com.voronkov.restaurantvoter.service.VotingResults;
+import com.voronkov.restaurantvoter.service.VotingWindow;
+import com.voronkov.restaurantvoter.to.ChangesTo;
+import com.voronkov.restaurantvoter.to.PageTo;
 import com.voronkov.restaurantvoter.to.RestaurantTo;
+import com.voronkov.restaurantvoter.to.VoteResultTo;
 import com.voronkov.restaurantvoter.utils.RestaurantUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.List;
 
 import static com.voronkov.restaurantvoter.utils.DateTimeUtil.adjustEndDateTime;
 import static com.voronkov.restaurantvoter.utils.DateTimeUtil.adjustStartDateTime;
-import static com.voronkov.restaurantvoter.utils.RestaurantUtil.createWithVote;
 
 @RestController
 @RequestMapping("restaurants")
@@ -26,47 +49,215 @@ public class RestaurantRestController {
 
     private static Logger log = LoggerFactory.getLogger(RestaurantRestController.class);
 
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
     private final RestaurantService restaurantService;
+    private final VoteTally voteTally;
+    private final ObjectWriter restaurantWriter;
+    private final RestaurantSnapshot restaurantSnapshot;
+    private final DataVersion dataVersion;
+    private final VoteStream voteStream;
+    private final VotingWindow votingWindow;
+    private final VotingResults votingResults;
+
+    @Value("${restaurantvoter.page.default-size:20}")
+    private int defaultPageSize;
+
+    @Value("${restaurantvoter.page.max-size:100}")
+    private int maxPageSize;
+
+    @Value("${restaurantvoter.results.max-age:PT1H}")
+    private Duration resultsMaxAge;
 
     @Autowired
-    public RestaurantRestController(RestaurantService restaurantService) {
+    public RestaurantRestController(RestaurantService restaurantService, VoteTally voteTally, ObjectMapper objectMapper,
+                                    RestaurantSnapshot restaurantSnapshot, DataVersion dataVersion,
+                                    VoteStream voteStream, VotingWindow votingWindow, VotingResults votingResults) {
         this.restaurantService = restaurantService;
+        this.voteTally = voteTally;
+        this.restaurantWriter = objectMapper.writerFor(RestaurantTo.class);
+        this.restaurantSnapshot = restaurantSnapshot;
+        this.dataVersion = dataVersion;
+        this.voteStream = voteStream;
+        this.votingWindow = votingWindow;
+        this.votingResults = votingResults;
+    }
+
+    //today's restaurants, served pre-serialized
+    @GetMapping("/today")
+    public ResponseEntity<byte[]> getAll(@RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                         WebRequest request) {
+        log.info("LOG список кафе получен");
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        //nothing changed since the client's copy, the snapshot is not even looked at
+        String currentETag = snapshotETag(dataVersion.get(), votingWindow.today(), gzip);
+        if (currentETag.equals(request.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(currentETag)
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                    .build();
+        }
+        RestaurantSnapshot.Snapshot snapshot = restaurantSnapshot.get();
+        //the snapshot may lag behind the current version by the rebuild interval
+        if (request.checkNotModified(snapshotETag(snapshot.getVersion(), snapshot.getDate(), gzip))) {
+            return null;
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(snapshot.getGzip());
+        }
+        return response.body(snapshot.getJson());
     }
 
     @GetMapping
-    public List<RestaurantTo> getAll() {
+    public ResponseEntity<List<RestaurantTo>> getPage(@RequestParam(name = "cursor", required = false) String cursor,
+                                                     @RequestParam(name = "size", required = false) Integer size,
+                                                     WebRequest request) {
         log.info("LOG список кафе получен");
-        return RestaurantUtil.getRestaurantWithVotes(restaurantService.getAll());
+        if (request.checkNotModified(DataVersion.toETag(dataVersion.get()))) {
+            return null;
+        }
+        return toResponse(restaurantService.getByDateOrBetweenDateTimes(adjustStartDateTime(null), adjustEndDateTime(null),
+                cursor, pageSize(size)));
     }
 
     @GetMapping("{id}")
-    public RestaurantTo get(@PathVariable("id") int id) {
+    public RestaurantTo get(@PathVariable("id") int id, WebRequest request) {
         log.info("LOG кафе с id: {} найдено", id);
-        return createWithVote(restaurantService.getById(id));
+        if (request.checkNotModified(DataVersion.toETag(dataVersion.get()))) {
+            return null;
+        }
+        return restaurantService.getWithVotes(id);
     }
 
     @GetMapping("meals/{id}")
-    public List<Meal> getMeals(@PathVariable("id") int id) {
+    public List<Meal> getMeals(@PathVariable("id") int id, WebRequest request) {
         log.info("LOG меню кафе с id: {} найдено", id);
+        if (request.checkNotModified(DataVersion.toETag(dataVersion.get()))) {
+            return null;
+        }
         return restaurantService.getMeals(id);
     }
 
     @GetMapping("vote/{id}")
-    public List<RestaurantTo> vote(@AuthenticationPrincipal User currentUser, @PathVariable("id") int restaurantId) {
-        restaurantService.vote(currentUser, restaurantId);
+    public VoteResultTo vote(@AuthenticationPrincipal AuthorizedUser currentUser, @PathVariable("id") int restaurantId) {
+        //late votes are refused before a transaction is opened
+        LocalDate date = votingWindow.check(restaurantId);
+        VoteResultTo result = restaurantService.vote(currentUser.getId(), restaurantId, date);
         log.info("LOG голос отправлен");
-        return RestaurantUtil.getRestaurantWithVotes(restaurantService.getAll());
+        return result;
+    }
+
+    //the former response: all restaurants with votes
+    @GetMapping(value = "vote/{id}", params = "full=true")
+    public List<RestaurantTo> voteFull(@AuthenticationPrincipal AuthorizedUser currentUser, @PathVariable("id") int restaurantId) {
+        LocalDate date = votingWindow.check(restaurantId);
+        restaurantService.vote(currentUser.getId(), restaurantId, date);
+        log.info("LOG голос отправлен");
+        return RestaurantUtil.getRestaurantWithVotes(restaurantService.getAll(), voteTally);
+    }
+
+    //the day's restaurants by votes, today by default; once the voting of the day is closed the result is cached
+    @GetMapping("/results")
+    public ResponseEntity<List<RestaurantTo>> getResults(@RequestParam(name = "date", required = false)
+                                                         @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+                                                         LocalDate date,
+                                                         WebRequest request) {
+        LocalDate day = date != null ? date : votingWindow.today();
+        log.info("LOG итоги голосования за {}", day);
+        if (votingResults.isFinal(day)) {
+            //taken before reading, so the result is never tagged newer than it is
+            String eTag = VotingResults.toETag(votingResults.getVersion(), day);
+            if (eTag.equals(request.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                        .cacheControl(CacheControl.maxAge(resultsMaxAge))
+                        .eTag(eTag)
+                        .build();
+            }
+            return ResponseEntity.ok()
+                    .cacheControl(CacheControl.maxAge(resultsMaxAge))
+                    .eTag(eTag)
+                    .body(votingResults.get(day));
+        }
+        if (request.checkNotModified(DataVersion.toETag(dataVersion.get()))) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache())
+                .body(votingResults.get(day));
+    }
+
+    //restaurants changed after the version of the previous call, the whole list without it
+    @GetMapping("/changes")
+    public ChangesTo getChanges(@RequestParam(name = "since", required = false) Long since) {
+        log.info("LOG изменения кафе с версии {}", since);
+        return restaurantService.getChanges(since);
+    }
+
+    //"votes" events with the changed counts, see VoteStream
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream() {
+        log.info("LOG подписка на голоса");
+        return voteStream.subscribe();
     }
 
     @GetMapping("/filter")
-    public List<RestaurantTo> getBetween(@RequestParam(name = "startDate", required = false)
+    public ResponseEntity<List<RestaurantTo>> getBetween(@RequestParam(name = "startDate", required = false)
                                    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
                                    LocalDate start,
                                          @RequestParam(name = "endDate", required = false)
                                    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
-                                   LocalDate end) {
-        List<Restaurant> restaurantDateFiltered = restaurantService.getByDateOrBetweenDateTimes(adjustStartDateTime(start), adjustEndDateTime(end));
-        return RestaurantUtil.getRestaurantWithVotes(restaurantDateFiltered);
+                                   LocalDate end,
+                                         @RequestParam(name = "cursor", required = false) String cursor,
+                                         @RequestParam(name = "size", required = false) Integer size) {
+        return toResponse(restaurantService.getByDateOrBetweenDateTimes(adjustStartDateTime(start), adjustEndDateTime(end),
+                cursor, pageSize(size)));
+    }
+
+    //one RestaurantTo per line, written while the rows are read
+    @GetMapping(value = "/filter/export", produces = APPLICATION_NDJSON_VALUE)
+    public void export(@RequestParam(name = "startDate", required = false)
+                       @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+                       LocalDate start,
+                       @RequestParam(name = "endDate", required = false)
+                       @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+                       LocalDate end,
+                       HttpServletResponse response) throws IOException {
+        log.info("LOG выгрузка кафе с {} по {}", start, end);
+        response.setContentType(APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        OutputStream out = response.getOutputStream();
+        restaurantService.exportBetween(adjustStartDateTime(start), adjustEndDateTime(end), restaurant -> {
+            try {
+                out.write(restaurantWriter.writeValueAsBytes(restaurant));
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        out.flush();
     }
-}
 
+    private int pageSize(Integer size) {
+        if (size == null) {
+            return defaultPageSize;
+        }
+        return Math.max(1, Math.min(size, maxPageSize));
+    }
+
+    private static ResponseEntity<List<RestaurantTo>> toResponse(PageTo<RestaurantTo> page) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(page.getContent());
+    }
+
+    //gzip and identity bodies are different representations and need different strong tags, a new day is a new list
+    private static String snapshotETag(long version, LocalDate date, boolean gzip) {
+        return "\"" + version + "-" + date + (gzip ? "-gzip\"" : "\"");
+    }
+}
@@ -1,17 +1,22 @@
 package com.voronkov.restaurantvoter.controller;
 
 import com.voronkov.restaurantvoter.AuthorizedUser;
+import com.voronkov.restaurantvoter.configuration.TokenService;
 import com.voronkov.restaurantvoter.model.Role;
 import com.voronkov.restaurantvoter.model.User;
 import com.voronkov.restaurantvoter.service.UserService;
+import com.voronkov.restaurantvoter.to.TokenTo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import javax.validation.Valid;
@@ -24,10 +29,12 @@ public class UserRestController {
     private static Logger log = LoggerFactory.getLogger(UserRestController.class);
 
     private final UserService userService;
+    private final TokenService tokenService;
 
     @Autowired
-    public UserRestController(UserService userService) {
+    public UserRestController(UserService userService, TokenService tokenService) {
         this.userService = userService;
+        this.tokenService = tokenService;
     }
 
     @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
@@ -48,6 +55,16 @@ public class UserRestController {
         return ResponseEntity.created(uriOfNewResource).body(created);
     }
 
+    //only for a password login: a token could renew itself, and is never checked against the database
+    @PostMapping("/token")
+    public TokenTo issueToken(@AuthenticationPrincipal AuthorizedUser currentUser, Authentication authentication) {
+        if (authentication instanceof PreAuthenticatedAuthenticationToken) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "A token is issued for a password login only");
+        }
+        log.info("LOG токен для юзера c id: {} выдан", currentUser.getId());
+        return tokenService.issue(currentUser);
+    }
+
     @PutMapping
     @ResponseStatus(HttpStatus.NO_CONTENT)
     public void update(@AuthenticationPrincipal AuthorizedUser currentUser, @Valid @RequestBody User user) {
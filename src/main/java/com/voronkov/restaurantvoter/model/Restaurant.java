@@ -2,19 +2,19 @@ package com.voronkov.restaurantvoter.model;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
-import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.*;
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.Size;
 import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 @Entity
 @Table(name = "restaurants")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @JsonIgnoreProperties({"hibernateLazyInitializer","handler"})
 public class Restaurant {
 
@@ -34,15 +34,9 @@ public class Restaurant {
     @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd")
     private LocalDate createdDate;
 
-    @ManyToMany(fetch = FetchType.LAZY)
-    @JoinTable(name = "restaurant_votes",
-            joinColumns = {@JoinColumn(name = "restaurant_id", nullable = false)},
-            inverseJoinColumns = {@JoinColumn(name = "user_id", nullable = false)})
-    @BatchSize(size = 20)
-    private Set<User> votes = new HashSet<>();
-
     @ElementCollection(fetch = FetchType.LAZY)
     @CollectionTable(name = "meals", joinColumns = @JoinColumn(name = "restaurant_id"))
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     private List<Meal> meals = new ArrayList<>();
 
     public Restaurant() {
@@ -55,14 +49,6 @@ public class Restaurant {
         this.meals = meals;
     }
 
-    public Restaurant(Integer id, String name, LocalDate createdDate, List<Meal> meals, Set<User> votes) {
-        this.id = id;
-        this.name = name;
-        this.createdDate = createdDate;
-        this.meals = meals;
-        this.votes = votes;
-    }
-
     public Integer getId() {
         return id;
     }
@@ -87,14 +73,6 @@ public class Restaurant {
         this.createdDate = createdDate;
     }
 
-    public Set<User> getVotes() {
-        return votes;
-    }
-
-//    public void setVotes(Set<User> votes) {
-//        this.votes = votes;
-//    }
-
     public List<Meal> getMeals() {
         return meals;
     }
@@ -0,0 +1,56 @@
+package com.voronkov.restaurantvoter.model;
+
+import javax.persistence.*;
+import java.time.LocalDate;
+
+//one row per user per day, the key itself forbids a second vote on the same day
+@Entity
+@Table(name = "votes")
+@IdClass(VoteId.class)
+public class Vote {
+
+    @Id
+    @Column(name = "user_id")
+    private Integer userId;
+
+    @Id
+    @Column(name = "vote_date")
+    private LocalDate date;
+
+    @Column(name = "restaurant_id", nullable = false)
+    private Integer restaurantId;
+
+    public Vote() {
+    }
+
+    public Vote(Integer userId, LocalDate date, Integer restaurantId) {
+        this.userId = userId;
+        this.date = date;
+        this.restaurantId = restaurantId;
+    }
+
+    public Integer getUserId() {
+        return userId;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public Integer getRestaurantId() {
+        return restaurantId;
+    }
+
+    public void setRestaurantId(Integer restaurantId) {
+        this.restaurantId = restaurantId;
+    }
+
+    @Override
+    public String toString() {
+        return "Vote{" +
+                "userId=" + userId +
+                ", date=" + date +
+                ", restaurantId=" + restaurantId +
+                '}';
+    }
+}
@@ -0,0 +1,42 @@
+package com.voronkov.restaurantvoter.model;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.Objects;
+
+public class VoteId implements Serializable {
+
+    private Integer userId;
+
+    private LocalDate date;
+
+    public VoteId() {
+    }
+
+    public VoteId(Integer userId, LocalDate date) {
+        this.userId = userId;
+        this.date = date;
+    }
+
+    public Integer getUserId() {
+        return userId;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof VoteId)) return false;
+        VoteId voteId = (VoteId) o;
+        return Objects.equals(userId, voteId.userId) &&
+                Objects.equals(date, voteId.date);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(userId, date);
+    }
+}
@@ -1,14 +1,65 @@
 package com.voronkov.restaurantvoter.repository;
 
 import com.voronkov.restaurantvoter.model.Restaurant;
+import com.voronkov.restaurantvoter.to.RestaurantTo;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.annotations.QueryHints.FETCH_SIZE;
 
 @Repository
 public interface CrudRestaurantRepository extends JpaRepository<Restaurant, Integer> {
 
     List<Restaurant> getRestaurantByCreatedDateBetween(LocalDate startDate, LocalDate endDate);
+
+    @Query("SELECT r.id FROM Restaurant r WHERE r.createdDate = :date")
+    List<Integer> getIdsByDate(@Param("date") LocalDate date);
+
+    @Query("SELECT new com.voronkov.restaurantvoter.to.RestaurantTo(r.id, r.name, r.createdDate, COUNT(v)) " +
+            "FROM Restaurant r LEFT JOIN Vote v ON v.restaurantId = r.id WHERE r.id = :id GROUP BY r.id, r.name, r.createdDate")
+    Optional<RestaurantTo> getWithVotes(@Param("id") int id);
+
+    @Query("SELECT new com.voronkov.restaurantvoter.to.RestaurantTo(r.id, r.name, r.createdDate, COUNT(v)) " +
+            "FROM Restaurant r LEFT JOIN Vote v ON v.restaurantId = r.id " +
+            "GROUP BY r.id, r.name, r.createdDate ORDER BY r.createdDate, r.id")
+    List<RestaurantTo> getAllWithVotes();
+
+    @Query("SELECT new com.voronkov.restaurantvoter.to.RestaurantTo(r.id, r.name, r.createdDate, COUNT(v)) " +
+            "FROM Restaurant r LEFT JOIN Vote v ON v.restaurantId = r.id WHERE r.id IN :ids " +
+            "GROUP BY r.id, r.name, r.createdDate ORDER BY r.createdDate, r.id")
+    List<RestaurantTo> getAllWithVotes(@Param("ids") Collection<Integer> ids);
+
+    @Query("SELECT new com.voronkov.restaurantvoter.to.RestaurantTo(r.id, r.name, r.createdDate, COUNT(v)) " +
+            "FROM Restaurant r LEFT JOIN Vote v ON v.restaurantId = r.id WHERE r.createdDate = :date " +
+            "GROUP BY r.id, r.name, r.createdDate ORDER BY r.id DESC")
+    List<RestaurantTo> getAllWithVotesByDate(@Param("date") LocalDate date);
+
+    //for exports, has to be consumed inside a transaction and closed
+    @QueryHints(@QueryHint(name = FETCH_SIZE, value = "500"))
+    @Query("SELECT new com.voronkov.restaurantvoter.to.RestaurantTo(r.id, r.name, r.createdDate, COUNT(v)) " +
+            "FROM Restaurant r LEFT JOIN Vote v ON v.restaurantId = r.id " +
+            "WHERE r.createdDate BETWEEN :startDate AND :endDate " +
+            "GROUP BY r.id, r.name, r.createdDate ORDER BY r.createdDate, r.id")
+    Stream<RestaurantTo> streamWithVotesBetween(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+
+    //keyset page, newest first: rows strictly after (afterDate, afterId) in (date DESC, id DESC) order
+    @Query("SELECT new com.voronkov.restaurantvoter.to.RestaurantTo(r.id, r.name, r.createdDate, COUNT(v)) " +
+            "FROM Restaurant r LEFT JOIN Vote v ON v.restaurantId = r.id " +
+            "WHERE r.createdDate BETWEEN :startDate AND :endDate " +
+            "AND (r.createdDate < :afterDate OR (r.createdDate = :afterDate AND r.id < :afterId)) " +
+            "GROUP BY r.id, r.name, r.createdDate ORDER BY r.createdDate DESC, r.id DESC")
+    List<RestaurantTo> getPageWithVotes(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate,
+                                        @Param("afterDate") LocalDate afterDate, @Param("afterId") int afterId,
+                                        Pageable pageable);
 }
@@ -1,10 +1,26 @@
 package com.voronkov.restaurantvoter.repository;
 
 import com.voronkov.restaurantvoter.model.User;
+import com.voronkov.restaurantvoter.to.UserTo;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+
 @Repository
 public interface CrudUserRepository extends JpaRepository<User, Integer> {
     User findByEmail(String email);
+
+    //no entities are built, the password is not read
+    @Query("SELECT new com.voronkov.restaurantvoter.to.UserTo(u.id, u.email, u.enabled) FROM User u " +
+            "WHERE u.id > :afterId ORDER BY u.id")
+    List<UserTo> getPage(@Param("afterId") int afterId, Pageable pageable);
+
+    //pairs of user id and role
+    @Query("SELECT u.id, r FROM User u JOIN u.roles r WHERE u.id IN :ids")
+    List<Object[]> getRoles(@Param("ids") Collection<Integer> ids);
 }
@@ -0,0 +1,40 @@
+package com.voronkov.restaurantvoter.repository;
+
+import com.voronkov.restaurantvoter.model.Vote;
+import com.voronkov.restaurantvoter.model.VoteId;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface CrudVoteRepository extends JpaRepository<Vote, VoteId>, CrudVoteRepositoryCustom {
+
+    @Query("SELECT v.restaurantId FROM Vote v WHERE v.userId = :userId AND v.date = :date")
+    Optional<Integer> getRestaurantId(@Param("userId") int userId, @Param("date") LocalDate date);
+
+    //pairs of user id and chosen restaurant id
+    @Query("SELECT v.userId, v.restaurantId FROM Vote v WHERE v.date = :date")
+    List<Object[]> getChoices(@Param("date") LocalDate date);
+
+    //pairs of date and chosen restaurant id
+    @Query("SELECT v.date, v.restaurantId FROM Vote v WHERE v.userId = :userId")
+    List<Object[]> getChoicesOfUser(@Param("userId") int userId);
+
+    @Query("SELECT v.userId FROM Vote v WHERE v.restaurantId = :restaurantId")
+    List<Integer> getVoters(@Param("restaurantId") int restaurantId);
+
+    @Modifying
+    @Query("DELETE FROM Vote v WHERE v.userId = :userId AND v.date = :date")
+    int delete(@Param("userId") int userId, @Param("date") LocalDate date);
+
+    //pairs of restaurant id and its votes count
+    @Query("SELECT v.restaurantId, COUNT(v) FROM Vote v WHERE v.restaurantId IN :ids GROUP BY v.restaurantId")
+    List<Object[]> countVotes(@Param("ids") Collection<Integer> ids);
+}
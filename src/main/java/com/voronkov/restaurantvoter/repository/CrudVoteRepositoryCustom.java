@@ -0,0 +1,9 @@
+package com.voronkov.restaurantvoter.repository;
+
+import java.time.LocalDate;
+
+public interface CrudVoteRepositoryCustom {
+
+    //casts or changes the vote of the day in one statement
+    int upsert(int userId, LocalDate date, int restaurantId);
+}
@@ -0,0 +1,30 @@
+package com.voronkov.restaurantvoter.repository;
+
+import com.voronkov.restaurantvoter.model.Vote;
+import org.hibernate.query.NativeQuery;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.time.LocalDate;
+
+public class CrudVoteRepositoryImpl implements CrudVoteRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    //a native update without query spaces makes Hibernate drop every second-level region,
+    //so the statement is declared to touch the votes table only
+    @Override
+    @Transactional
+    public int upsert(int userId, LocalDate date, int restaurantId) {
+        return em.createNativeQuery("MERGE INTO votes (user_id, vote_date, restaurant_id) KEY (user_id, vote_date) " +
+                "VALUES (:userId, :date, :restaurantId)")
+                .unwrap(NativeQuery.class)
+                .addSynchronizedEntityClass(Vote.class)
+                .setParameter("userId", userId)
+                .setParameter("date", date)
+                .setParameter("restaurantId", restaurantId)
+                .executeUpdate();
+    }
+}
@@ -0,0 +1,76 @@
+package com.voronkov.restaurantvoter.service;
+
+import com.voronkov.restaurantvoter.AuthorizedUser;
+import com.voronkov.restaurantvoter.to.CacheStatsTo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Authenticated principals by user id, bounded and expiring as configured for the "principals" cache in ehcache.xml.
+ * The id of an email is taken from {@link UserCache}, so a write evicts the principal precisely by id.
+ * A principal loaded while a write was evicting is not cached: it may have been read before the write committed.
+ * Callers always get a copy: Spring Security erases credentials of the returned principal after authentication.
+ */
+@Component
+public class AuthorizedUserCache {
+
+    public static final String CACHE_NAME = "principals";
+
+    private final Cache cache;
+    private final UserCache userCache;
+    private final CacheMonitor cacheMonitor;
+
+    //guarded by this, counts evictions
+    private long generation;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    @Autowired
+    public AuthorizedUserCache(CacheManager cacheManager, UserCache userCache, CacheMonitor cacheMonitor) {
+        this.cache = Objects.requireNonNull(cacheManager.getCache(CACHE_NAME), "Cache " + CACHE_NAME + " is not configured");
+        this.userCache = userCache;
+        this.cacheMonitor = cacheMonitor;
+    }
+
+    public AuthorizedUser get(String email, Function<String, AuthorizedUser> loader) {
+        Integer id = userCache.getId(email);
+        AuthorizedUser cached = id == null ? null : cache.get(id, AuthorizedUser.class);
+        //the email may have been changed since the id was cached
+        if (cached != null && email.equals(cached.getUsername())) {
+            hits.increment();
+            return new AuthorizedUser(cached);
+        }
+        misses.increment();
+        long started = generation();
+        AuthorizedUser loaded = cacheMonitor.load(CACHE_NAME, () -> loader.apply(email));
+        put(email, loaded, started);
+        return new AuthorizedUser(loaded);
+    }
+
+    public synchronized void evict(int id) {
+        generation++;
+        cache.evict(id);
+    }
+
+    public CacheStatsTo getStats() {
+        return new CacheStatsTo(CACHE_NAME, hits.sum(), misses.sum());
+    }
+
+    private synchronized long generation() {
+        return generation;
+    }
+
+    private synchronized void put(String email, AuthorizedUser loaded, long started) {
+        if (generation == started) {
+            cache.put(loaded.getId(), loaded);
+            userCache.putId(email, loaded.getId());
+        }
+    }
+}
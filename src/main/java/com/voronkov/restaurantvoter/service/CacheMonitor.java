@@ -0,0 +1,170 @@
+package com.voronkov.restaurantvoter.service;
+
+import com.voronkov.restaurantvoter.to.CacheUsageTo;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.cache.Cache;
+import javax.cache.CacheException;
+import javax.cache.CacheManager;
+import javax.cache.management.CacheStatisticsMXBean;
+import javax.management.JMX;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Usage of every cache of the JCache manager, the Spring caches and the Hibernate regions alike:
+ * hits, misses, puts, removals and evictions from the standard CacheStatisticsMXBean of the cache
+ * (statistics are enabled in ehcache.xml), the number of entries and the latency of the loads made through {@link #load}.
+ * Hibernate loads its regions itself, so they show no loads.
+ * JCache has no size, so the entries are counted by walking the cache: only for admins, at GET /admin/cache
+ * and on the Prometheus scrape. The walk reads every entry as a hit, those hits are taken back out of the reported ones.
+ * The same numbers are bound to the meter registry as restaurantvoter.cache.* tagged with the cache name.
+ */
+@Component
+public class CacheMonitor implements MeterBinder {
+
+    private final CacheManager cacheManager;
+
+    private final ConcurrentMap<String, CacheStatisticsMXBean> statistics = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Loads> loads = new ConcurrentHashMap<>();
+    //hits made by counting the entries, guarded by this together with reading the hits
+    private final ConcurrentMap<String, Long> walked = new ConcurrentHashMap<>();
+
+    @Autowired
+    public CacheMonitor(CacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+    }
+
+    //times the loader of a missed entry of the cache
+    public <T> T load(String cacheName, Supplier<T> loader) {
+        long start = System.nanoTime();
+        try {
+            return loader.get();
+        } finally {
+            loads.computeIfAbsent(cacheName, name -> new Loads()).add(System.nanoTime() - start);
+        }
+    }
+
+    public List<CacheUsageTo> getUsage() {
+        List<CacheUsageTo> usage = new ArrayList<>();
+        for (String name : names()) {
+            if (cacheManager.getCache(name) != null) {
+                usage.add(usage(name));
+            }
+        }
+        return usage;
+    }
+
+    //every cache is declared in ehcache.xml, so all of them exist when the registry binds
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (String name : names()) {
+            if (cacheManager.getCache(name) == null) {
+                continue;
+            }
+            CacheStatisticsMXBean cacheStatistics = statistics(name);
+            FunctionCounter.builder("restaurantvoter.cache.gets", this, monitor -> monitor.hits(name))
+                    .tags("cache", name, "result", "hit")
+                    .register(registry);
+            FunctionCounter.builder("restaurantvoter.cache.gets", cacheStatistics, CacheStatisticsMXBean::getCacheMisses)
+                    .tags("cache", name, "result", "miss")
+                    .register(registry);
+            FunctionCounter.builder("restaurantvoter.cache.puts", cacheStatistics, CacheStatisticsMXBean::getCachePuts)
+                    .tag("cache", name)
+                    .register(registry);
+            FunctionCounter.builder("restaurantvoter.cache.evictions", cacheStatistics, CacheStatisticsMXBean::getCacheEvictions)
+                    .tag("cache", name)
+                    .register(registry);
+            Gauge.builder("restaurantvoter.cache.size", this, monitor -> monitor.size(name))
+                    .tag("cache", name)
+                    .register(registry);
+            Loads cacheLoads = loads.computeIfAbsent(name, n -> new Loads());
+            FunctionTimer.builder("restaurantvoter.cache.loads", cacheLoads,
+                    l -> l.count.sum(), l -> l.nanos.sum(), TimeUnit.NANOSECONDS)
+                    .tag("cache", name)
+                    .register(registry);
+        }
+    }
+
+    private Set<String> names() {
+        Set<String> names = new TreeSet<>();
+        cacheManager.getCacheNames().forEach(names::add);
+        return names;
+    }
+
+    //the MXBean is registered under the name the JCache spec gives it once statistics are enabled
+    private CacheStatisticsMXBean statistics(String name) {
+        return statistics.computeIfAbsent(name, n -> {
+            try {
+                ObjectName objectName = new ObjectName("javax.cache:type=CacheStatistics,CacheManager="
+                        + sanitize(cacheManager.getURI().toString()) + ",Cache=" + sanitize(n));
+                return JMX.newMXBeanProxy(ManagementFactory.getPlatformMBeanServer(), objectName, CacheStatisticsMXBean.class);
+            } catch (MalformedObjectNameException e) {
+                throw new CacheException("No statistics of cache " + n, e);
+            }
+        });
+    }
+
+    private static String sanitize(String name) {
+        return name.replaceAll(",|:|=|\n", ".");
+    }
+
+    private synchronized long hits(String name) {
+        return statistics(name).getCacheHits() - walked.getOrDefault(name, 0L);
+    }
+
+    //the native iterator does not load, it only reads what the cache holds
+    private synchronized long size(String name) {
+        Cache<?, ?> cache = cacheManager.getCache(name);
+        if (cache == null) {
+            return -1;
+        }
+        long size = 0;
+        for (org.ehcache.Cache.Entry<?, ?> ignored : (org.ehcache.Cache<?, ?>) cache.unwrap(org.ehcache.Cache.class)) {
+            size++;
+        }
+        walked.merge(name, size, Long::sum);
+        return size;
+    }
+
+    private CacheUsageTo usage(String name) {
+        CacheStatisticsMXBean cacheStatistics = statistics(name);
+        Loads cacheLoads = loads.getOrDefault(name, new Loads());
+        long size = size(name);
+        return new CacheUsageTo(name, hits(name), cacheStatistics.getCacheMisses(),
+                cacheStatistics.getCachePuts(), cacheStatistics.getCacheRemovals(), cacheStatistics.getCacheEvictions(),
+                size, cacheStatistics.getAverageGetTime(), cacheLoads.count.sum(), cacheLoads.averageMillis());
+    }
+
+    private static class Loads {
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+
+        private void add(long elapsed) {
+            count.increment();
+            nanos.add(elapsed);
+        }
+
+        private double averageMillis() {
+            long n = count.sum();
+            return n == 0 ? 0 : nanos.sum() / 1_000_000.0 / n;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.voronkov.restaurantvoter.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Grows on every committed vote and restaurant or menu change, used as ETag of the restaurant resources.
+ * Starts from the boot time, so versions handed out before a restart are not repeated after it.
+ * The restaurants touched by the last restaurantvoter.changes.capacity versions are kept for the change feed.
+ */
+@Component
+public class DataVersion {
+
+    private final AtomicLong version = new AtomicLong(System.currentTimeMillis());
+
+    private final int capacity;
+    //oldest first, guarded by this
+    private final Deque<Change> changes = new ArrayDeque<>();
+
+    @Autowired
+    public DataVersion(@Value("${restaurantvoter.changes.capacity:1000}") int capacity) {
+        this.capacity = capacity;
+    }
+
+    public long get() {
+        return version.get();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onRestaurantChanged(RestaurantChangedEvent event) {
+        changes.addLast(new Change(version.incrementAndGet(), event.getRestaurantIds()));
+        if (changes.size() > capacity) {
+            changes.removeFirst();
+        }
+    }
+
+    //ids of restaurants changed after the version, null when the log does not reach back that far
+    @Nullable
+    public synchronized Set<Integer> getChangedSince(long since) {
+        long current = version.get();
+        long oldest = changes.isEmpty() ? current + 1 : changes.getFirst().version;
+        if (since > current || since < oldest - 1) {
+            return null;
+        }
+        Set<Integer> ids = new HashSet<>();
+        for (Iterator<Change> it = changes.descendingIterator(); it.hasNext(); ) {
+            Change change = it.next();
+            if (change.version <= since) {
+                break;
+            }
+            ids.addAll(change.restaurantIds);
+        }
+        return ids;
+    }
+
+    public static String toETag(long version) {
+        return "\"" + version + "\"";
+    }
+
+    private static class Change {
+
+        private final long version;
+        private final List<Integer> restaurantIds;
+
+        private Change(long version, List<Integer> restaurantIds) {
+            this.version = version;
+            this.restaurantIds = restaurantIds;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.voronkov.restaurantvoter.service;
+
+import com.voronkov.restaurantvoter.model.Restaurant;
+import com.voronkov.restaurantvoter.repository.CrudRestaurantRepository;
+import org.hibernate.Hibernate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Two jobs a day, both timed by the Clock bean: at the voting cutoff the day's result is frozen,
+ * at midnight the past days' counters are dropped and the new day is loaded ahead of the first requests.
+ * The scheduler only ticks every restaurantvoter.rollover.tick, each tick compares the Clock with the next job,
+ * so a Clock that is not the wall clock (or jumps) still gets its jobs, late by one tick at most.
+ */
+@Component
+public class DayRollover {
+
+    private static Logger log = LoggerFactory.getLogger(DayRollover.class);
+
+    private final Clock clock;
+    private final TaskScheduler taskScheduler;
+    private final VotingWindow votingWindow;
+    private final VotingResults votingResults;
+    private final VoteTally voteTally;
+    private final VoterIndex voterIndex;
+    private final RestaurantSnapshot restaurantSnapshot;
+    private final CrudRestaurantRepository restaurantRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration tick;
+
+    //the next job, guarded by this
+    private LocalDate nextDate;
+    private boolean cutoffNext;
+
+    @Autowired
+    public DayRollover(Clock clock, TaskScheduler taskScheduler, VotingWindow votingWindow, VotingResults votingResults,
+                       VoteTally voteTally, VoterIndex voterIndex, RestaurantSnapshot restaurantSnapshot,
+                       CrudRestaurantRepository restaurantRepository,
+                       PlatformTransactionManager transactionManager,
+                       @Value("${restaurantvoter.rollover.tick:PT1S}") Duration tick) {
+        this.clock = clock;
+        this.taskScheduler = taskScheduler;
+        this.votingWindow = votingWindow;
+        this.votingResults = votingResults;
+        this.voteTally = voteTally;
+        this.voterIndex = voterIndex;
+        this.restaurantSnapshot = restaurantSnapshot;
+        this.restaurantRepository = restaurantRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.transactionTemplate.setReadOnly(true);
+        this.tick = tick;
+    }
+
+    //a cutoff already passed today runs on the first tick
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        synchronized (this) {
+            nextDate = LocalDate.now(clock);
+            cutoffNext = true;
+        }
+        taskScheduler.scheduleWithFixedDelay(this::tick, tick);
+    }
+
+    //runs every job that is due by the Clock in order, the next one is taken from the previous one's date,
+    //so none is run twice or skipped even when the Clock jumps over several of them
+    synchronized void tick() {
+        Instant now = clock.instant();
+        while (nextDate != null && !now.isBefore(nextAt())) {
+            LocalDate date = nextDate;
+            try {
+                if (cutoffNext) {
+                    onCutoff(date);
+                } else {
+                    onMidnight(date);
+                }
+            } catch (RuntimeException e) {
+                log.error("LOG задача смены дня {} не выполнена", date, e);
+            }
+            if (cutoffNext) {
+                nextDate = date.plusDays(1);
+            }
+            cutoffNext = !cutoffNext;
+        }
+    }
+
+    public void onCutoff(LocalDate date) {
+        log.info("LOG голосование за {} закрыто", date);
+        votingResults.freeze(date);
+    }
+
+    public void onMidnight(LocalDate date) {
+        log.info("LOG новый день {}", date);
+        voteTally.removeBefore(date);
+        voterIndex.removeBefore(date);
+        //yesterday's result stays for the late readers
+        votingResults.removeBefore(date.minusDays(1));
+        votingWindow.warmUp();
+        voterIndex.warmUp(date);
+        transactionTemplate.executeWithoutResult(status -> {
+            List<Restaurant> restaurants = restaurantRepository.getRestaurantByCreatedDateBetween(date, date);
+            //restaurants and menus go to the second-level cache
+            restaurants.forEach(restaurant -> Hibernate.initialize(restaurant.getMeals()));
+            voteTally.getVotes(restaurants);
+        });
+        //yesterday's list goes at once, today's is built before the first request
+        restaurantSnapshot.invalidate();
+        restaurantSnapshot.get();
+    }
+
+    //the cutoff is taken anew on every tick, limitHourForVote may be changed at runtime
+    private Instant nextAt() {
+        return cutoffNext ? votingWindow.getCutoff(nextDate) : nextDate.atStartOfDay(clock.getZone()).toInstant();
+    }
+}
@@ -0,0 +1,46 @@
+package com.voronkov.restaurantvoter.service;
+
+import java.time.LocalDate;
+import java.util.List;
+
+//published by RestaurantService, listeners get it after commit
+public class RestaurantChangedEvent {
+
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED,
+        VOTED
+    }
+
+    private final Type type;
+    private final LocalDate date;
+    private final List<Integer> restaurantIds;
+
+    public RestaurantChangedEvent(Type type, LocalDate date, List<Integer> restaurantIds) {
+        this.type = type;
+        this.date = date;
+        this.restaurantIds = restaurantIds;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public List<Integer> getRestaurantIds() {
+        return restaurantIds;
+    }
+
+    @Override
+    public String toString() {
+        return "RestaurantChangedEvent{" +
+                "type=" + type +
+                ", date=" + date +
+                ", restaurantIds=" + restaurantIds +
+                '}';
+    }
+}
@@ -0,0 +1,137 @@
+package com.voronkov.restaurantvoter.service;
+
+import com.voronkov.restaurantvoter.to.CacheStatsTo;
+import com.voronkov.restaurantvoter.to.PageTo;
+import com.voronkov.restaurantvoter.to.RestaurantTo;
+import org.ehcache.config.CacheRuntimeConfiguration;
+import org.ehcache.expiry.ExpiryPolicy;
+import org.ehcache.jsr107.Eh107Configuration;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Restaurant listing pages by (start, end, cursor, size), bounded and expiring as the "restaurantPages" cache in ehcache.xml.
+ * Every committed change stamps the date it touched; a page is used only while no date of its range
+ * was stamped after the page was read. Votes touch today only, so past ranges stay cached until an admin edits one of their days.
+ * A page read longer than the cache's ttl ago is not used either, so stamps older than the ttl are dropped:
+ * only the dates changed within the ttl are kept and scanned.
+ * Concurrent misses of one key share one load through SingleFlight, the page is cached with the stamp of that load.
+ */
+@Component
+public class RestaurantPageCache {
+
+    public static final String CACHE_NAME = "restaurantPages";
+
+    private final Cache cache;
+    private final CacheMonitor cacheMonitor;
+    private final SingleFlight singleFlight;
+    private final long ttlNanos;
+
+    private final AtomicLong stamps = new AtomicLong();
+    //the last stamp of every date changed within the ttl
+    private final ConcurrentMap<LocalDate, Change> changed = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    @Autowired
+    public RestaurantPageCache(CacheManager cacheManager, CacheMonitor cacheMonitor, SingleFlight singleFlight) {
+        this.cache = Objects.requireNonNull(cacheManager.getCache(CACHE_NAME), "Cache " + CACHE_NAME + " is not configured");
+        this.cacheMonitor = cacheMonitor;
+        this.singleFlight = singleFlight;
+        this.ttlNanos = ttl(cache).toNanos();
+    }
+
+    public PageTo<RestaurantTo> get(LocalDate start, LocalDate end, @Nullable String cursor, int size,
+                                    Supplier<PageTo<RestaurantTo>> loader) {
+        String key = start + "/" + end + "/" + (cursor == null ? "" : cursor) + "/" + size;
+        Entry cached = cache.get(key, Entry.class);
+        if (cached != null && System.nanoTime() - cached.readAt < ttlNanos && isFresh(cached.stamp, start, end)) {
+            hits.increment();
+            return cached.page;
+        }
+        misses.increment();
+        return singleFlight.execute(CACHE_NAME, key, () -> {
+            //taken before reading, so a change committed meanwhile makes the page stale
+            long readAt = System.nanoTime();
+            long stamp = stamps.get();
+            Entry loaded = new Entry(readAt, stamp, cacheMonitor.load(CACHE_NAME, loader));
+            cache.put(key, loaded);
+            return loaded;
+        }).page;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRestaurantChanged(RestaurantChangedEvent event) {
+        long stamp = stamps.incrementAndGet();
+        //taken after the stamp, so every page read before the change was read before this time
+        long at = System.nanoTime();
+        changed.put(event.getDate(), new Change(stamp, at));
+        changed.values().removeIf(change -> at - change.at >= ttlNanos);
+    }
+
+    public CacheStatsTo getStats() {
+        return new CacheStatsTo(CACHE_NAME, hits.sum(), misses.sum());
+    }
+
+    //one entry per day changed within the ttl, so the check stays short for any range
+    private boolean isFresh(long stamp, LocalDate start, LocalDate end) {
+        for (Map.Entry<LocalDate, Change> change : changed.entrySet()) {
+            if (change.getValue().stamp > stamp && !change.getKey().isBefore(start) && !change.getKey().isAfter(end)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Duration ttl(Cache cache) {
+        javax.cache.Cache<Object, Object> jcache = (javax.cache.Cache<Object, Object>) cache.getNativeCache();
+        Eh107Configuration<Object, Object> eh107 = jcache.getConfiguration(Eh107Configuration.class);
+        CacheRuntimeConfiguration<Object, Object> configuration = eh107.unwrap(CacheRuntimeConfiguration.class);
+        Duration ttl = configuration.getExpiryPolicy().getExpiryForCreation(null, null);
+        if (ttl == null || ttl.equals(ExpiryPolicy.INFINITE)) {
+            throw new IllegalStateException("Cache " + CACHE_NAME + " needs a ttl");
+        }
+        return ttl;
+    }
+
+    private static class Entry implements Serializable {
+
+        private final long readAt;
+        private final long stamp;
+        private final PageTo<RestaurantTo> page;
+
+        private Entry(long readAt, long stamp, PageTo<RestaurantTo> page) {
+            this.readAt = readAt;
+            this.stamp = stamp;
+            this.page = page;
+        }
+    }
+
+    private static class Change {
+
+        private final long stamp;
+        private final long at;
+
+        private Change(long stamp, long at) {
+            this.stamp = stamp;
+            this.at = at;
+        }
+    }
+}
@@ -2,73 +2,251 @@ package com.voronkov.restaurantvoter.service;
 
 import com.voronkov.restaurantvoter.model.Meal;
 import com.voronkov.restaurantvoter.model.Restaurant;
-import com.voronkov.restaurantvoter.model.User;
 import com.voronkov.restaurantvoter.repository.CrudRestaurantRepository;
-import com.voronkov.restaurantvoter.utils.exception.DontCanVoteException;
+import com.voronkov.restaurantvoter.repository.CrudVoteRepository;
+import com.voronkov.restaurantvoter.to.ChangesTo;
+import com.voronkov.restaurantvoter.to.PageTo;
+import com.voronkov.restaurantvoter.to.RestaurantTo;
+import com.voronkov.restaurantvoter.to.VoteCountTo;
+import com.voronkov.restaurantvoter.to.VoteResultTo;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.Hibernate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpStatus;
 import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import static com.voronkov.restaurantvoter.utils.TimeUtil.canVote;
+import static com.voronkov.restaurantvoter.service.VoterIndex.NO_VOTE;
+import static com.voronkov.restaurantvoter.utils.RestaurantUtil.CURSOR_SEPARATOR;
+import static com.voronkov.restaurantvoter.utils.RestaurantUtil.toCursor;
+import static com.voronkov.restaurantvoter.utils.TransactionUtil.afterCommit;
+import static com.voronkov.restaurantvoter.utils.TransactionUtil.afterCompletion;
 
 @Service
 public class RestaurantService {
 
     private final CrudRestaurantRepository restaurantRepository;
+    private final CrudVoteRepository voteRepository;
+    private final VoteTally voteTally;
+    private final VoterIndex voterIndex;
+    private final DataVersion dataVersion;
+    private final RestaurantPageCache restaurantPageCache;
+    private final SingleFlight singleFlight;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final Counter votesAccepted;
+    private final Counter votesChanged;
+    private final Counter votesWithdrawn;
 
     @Autowired
-    public RestaurantService(CrudRestaurantRepository restaurantRepository) {
+    public RestaurantService(CrudRestaurantRepository restaurantRepository, CrudVoteRepository voteRepository,
+                             VoteTally voteTally, VoterIndex voterIndex,
+                             DataVersion dataVersion, RestaurantPageCache restaurantPageCache,
+                             SingleFlight singleFlight, ApplicationEventPublisher eventPublisher, MeterRegistry meterRegistry) {
         this.restaurantRepository = restaurantRepository;
+        this.voteRepository = voteRepository;
+        this.voteTally = voteTally;
+        this.voterIndex = voterIndex;
+        this.dataVersion = dataVersion;
+        this.restaurantPageCache = restaurantPageCache;
+        this.singleFlight = singleFlight;
+        this.eventPublisher = eventPublisher;
+        this.votesAccepted = votes(meterRegistry, "accepted");
+        this.votesChanged = votes(meterRegistry, "changed");
+        this.votesWithdrawn = votes(meterRegistry, "withdrawn");
     }
 
+    //taken votes are counted when committed, rejected ones by RestaurantExceptionHandler
+    private static Counter votes(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("restaurantvoter.votes")
+                .description("Votes by outcome")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    //shared by concurrent callers: read-only, and meals are not loaded
+    @Timed("restaurantvoter.restaurants")
     public List<Restaurant> getAll() {
-        return restaurantRepository.findAll();
+        return singleFlight.execute("restaurants", "all", () -> Collections.unmodifiableList(restaurantRepository.findAll()));
     }
 
+    @Timed("restaurantvoter.restaurants")
     public Restaurant getById(int id) {
-        return find(id);
+        return singleFlight.execute("restaurant", id, () -> {
+            Restaurant restaurant = find(id);
+            //loaded here, callers in other threads must not touch the loading session
+            Hibernate.initialize(restaurant.getMeals());
+            return restaurant;
+        });
     }
 
+    @Timed("restaurantvoter.restaurants")
+    public RestaurantTo getWithVotes(int id) {
+        return singleFlight.execute("restaurantWithVotes", id, () -> restaurantRepository.getWithVotes(id)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Not found")));
+    }
+
+    @Timed("restaurantvoter.restaurants")
     public List<Meal> getMeals(int id) {
-        return find(id).getMeals();
+        return singleFlight.execute("meals", id, () -> List.copyOf(find(id).getMeals()));
     }
 
 
+    @Timed("restaurantvoter.restaurants")
     public Restaurant save(Restaurant restaurant) {
-        return restaurantRepository.save(restaurant);
+        Restaurant saved = restaurantRepository.save(restaurant);
+        publish(RestaurantChangedEvent.Type.CREATED, saved);
+        return saved;
     }
 
+    @Timed("restaurantvoter.restaurants")
     public void update(Restaurant restaurant) {
         restaurantRepository.save(restaurant);
+        publish(RestaurantChangedEvent.Type.UPDATED, restaurant);
     }
 
+    //the restaurant's votes are deleted with it, only its voters and its counter are changed in memory
+    @Transactional
+    @Timed("restaurantvoter.restaurants")
     public void delete(int id) {
         Restaurant restaurant = find(id);
+        LocalDate date = restaurant.getCreatedDate();
+        List<Integer> voters = voteRepository.getVoters(id);
+        //seeds read before the commit are not installed
+        voteTally.begin(date);
+        afterCompletion(() -> voteTally.end(date));
         restaurantRepository.delete(restaurant);
+        afterCommit(() -> {
+            voteTally.remove(restaurant);
+            voters.forEach(userId -> voterIndex.removeChoice(date, userId, id));
+        });
+        publish(RestaurantChangedEvent.Type.DELETED, restaurant);
     }
 
-    public void vote(User user, int restaurantId) {
-        Restaurant restaurant = find(restaurantId);
-        Set<User> votes = restaurant.getVotes();
-        if (!canVote(restaurant)) {
-            throw new DontCanVoteException();
-        }
-        if (votes.contains(user)) {
-            votes.remove(user);
+    //the date is the one VotingWindow.check returned, it is checked before the transaction is opened
+    @Transactional
+    @Timed("restaurantvoter.restaurants")
+    public VoteResultTo vote(int userId, int restaurantId, LocalDate date) {
+        //held until the choice is set after commit, or the transaction is rolled back
+        Lock lock = voterIndex.lock(userId);
+        lock.lock();
+        afterCompletion(lock::unlock);
+        int before = voterIndex.getChoice(date, userId);
+        List<Integer> affected = before == NO_VOTE || before == restaurantId ? List.of(restaurantId) : List.of(before, restaurantId);
+        //counters are seeded before the write, so they hold committed votes only
+        Map<Integer, Integer> votes = new LinkedHashMap<>();
+        affected.forEach(id -> votes.put(id, voteTally.getVotes(date, id)));
+        voteTally.begin(date);
+        afterCompletion(() -> voteTally.end(date));
+        int choice;
+        if (before == restaurantId) {
+            //repeated vote for the same restaurant takes the vote back
+            voteRepository.delete(userId, date);
+            choice = NO_VOTE;
+            votes.merge(restaurantId, -1, Integer::sum);
         } else {
-            votes.add(user);
+            voteRepository.upsert(userId, date, restaurantId);
+            choice = restaurantId;
+            votes.merge(restaurantId, 1, Integer::sum);
+            if (before != NO_VOTE) {
+                votes.merge(before, -1, Integer::sum);
+            }
         }
-        restaurantRepository.save(restaurant);
+        Counter outcome = choice == NO_VOTE ? votesWithdrawn : before == NO_VOTE ? votesAccepted : votesChanged;
+        afterCommit(() -> {
+            outcome.increment();
+            //a day reloaded meanwhile already holds the choice, the counters still need the deltas
+            voterIndex.setChoice(date, userId, choice);
+            if (before != NO_VOTE) {
+                voteTally.decrement(date, before);
+            }
+            if (choice != NO_VOTE) {
+                voteTally.increment(date, choice);
+            }
+        });
+        eventPublisher.publishEvent(new RestaurantChangedEvent(RestaurantChangedEvent.Type.VOTED, date, affected));
+        List<VoteCountTo> counts = votes.entrySet().stream()
+                .map(e -> new VoteCountTo(e.getKey(), date, e.getValue()))
+                .collect(Collectors.toList());
+        return new VoteResultTo(choice == NO_VOTE ? null : choice, date, counts);
+    }
+
+    //newest first, the cursor is the last restaurant of the previous page
+    @Timed("restaurantvoter.restaurants")
+    public PageTo<RestaurantTo> getByDateOrBetweenDateTimes(LocalDate startDateTime, LocalDate endDateTime, @Nullable String cursor, int size) {
+        return restaurantPageCache.get(startDateTime, endDateTime, cursor, size,
+                () -> loadPage(startDateTime, endDateTime, cursor, size));
+    }
+
+    private PageTo<RestaurantTo> loadPage(LocalDate startDateTime, LocalDate endDateTime, @Nullable String cursor, int size) {
+        LocalDate afterDate = endDateTime.plusDays(1);
+        int afterId = 0;
+        if (cursor != null && !cursor.isEmpty()) {
+            try {
+                int separator = cursor.lastIndexOf(CURSOR_SEPARATOR);
+                afterDate = LocalDate.parse(cursor.substring(0, separator));
+                afterId = Integer.parseInt(cursor.substring(separator + 1));
+            } catch (RuntimeException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+            }
+        }
+        //one extra row tells whether there is a next page
+        List<RestaurantTo> restaurants = restaurantRepository.getPageWithVotes(startDateTime, endDateTime, afterDate, afterId,
+                PageRequest.of(0, size + 1));
+        if (restaurants.size() <= size) {
+            return new PageTo<>(restaurants, null);
+        }
+        List<RestaurantTo> page = new ArrayList<>(restaurants.subList(0, size));
+        return new PageTo<>(page, toCursor(page.get(size - 1)));
+    }
+
+    //rows are handed to the consumer one by one, nothing is collected in memory
+    @Transactional(readOnly = true)
+    @Timed("restaurantvoter.restaurants")
+    public void exportBetween(LocalDate startDate, LocalDate endDate, Consumer<RestaurantTo> consumer) {
+        try (Stream<RestaurantTo> restaurants = restaurantRepository.streamWithVotesBetween(startDate, endDate)) {
+            restaurants.forEach(consumer);
+        }
+    }
+
+    //the version is taken before reading, so changes committed meanwhile are sent again next time
+    @Transactional(readOnly = true)
+    @Timed("restaurantvoter.restaurants")
+    public ChangesTo getChanges(@Nullable Long since) {
+        long version = dataVersion.get();
+        Set<Integer> changed = since == null ? null : dataVersion.getChangedSince(since);
+        if (changed == null) {
+            return new ChangesTo(version, true, restaurantRepository.getAllWithVotes(), List.of());
+        }
+        if (changed.isEmpty()) {
+            return new ChangesTo(version, false, List.of(), List.of());
+        }
+        List<RestaurantTo> restaurants = restaurantRepository.getAllWithVotes(changed);
+        Set<Integer> found = restaurants.stream().map(RestaurantTo::getId).collect(Collectors.toSet());
+        List<Integer> deleted = changed.stream().filter(id -> !found.contains(id)).sorted().collect(Collectors.toList());
+        return new ChangesTo(version, false, restaurants, deleted);
     }
 
-    public List<Restaurant> getByDateOrBetweenDateTimes(@Nullable LocalDate startDateTime, @Nullable LocalDate endDateTime) {
-        return restaurantRepository.getRestaurantByCreatedDateBetween(startDateTime, endDateTime);
+    private void publish(RestaurantChangedEvent.Type type, Restaurant restaurant) {
+        eventPublisher.publishEvent(new RestaurantChangedEvent(type, restaurant.getCreatedDate(), List.of(restaurant.getId())));
     }
 
     private Restaurant find(int id) {
@@ -0,0 +1,162 @@
+package com.voronkov.restaurantvoter.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.voronkov.restaurantvoter.repository.CrudRestaurantRepository;
+import com.voronkov.restaurantvoter.to.RestaurantTo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Today's restaurants of GET /restaurants/today, newest first, already serialized to JSON and gzip.
+ * Read straight from the database, never through RestaurantPageCache, so a stale page cannot get in.
+ * Committed restaurant changes and votes mark it stale, it is rebuilt on the next read
+ * but not more often than restaurantvoter.snapshot.min-rebuild-interval: meanwhile readers get the previous one.
+ * A snapshot of another day than today by the Clock is never served, so the day rollover rebuilds it at once.
+ */
+@Component
+public class RestaurantSnapshot {
+
+    private final CrudRestaurantRepository restaurantRepository;
+    private final DataVersion dataVersion;
+    private final VotingWindow votingWindow;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final long minRebuildIntervalNanos;
+
+    private final AtomicBoolean stale = new AtomicBoolean(true);
+    private final ReentrantLock rebuildLock = new ReentrantLock();
+    private volatile Snapshot snapshot;
+
+    @Autowired
+    public RestaurantSnapshot(CrudRestaurantRepository restaurantRepository, DataVersion dataVersion, VotingWindow votingWindow,
+                              ObjectMapper objectMapper,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${restaurantvoter.snapshot.min-rebuild-interval:PT0.5S}") Duration minRebuildInterval) {
+        this.restaurantRepository = restaurantRepository;
+        this.dataVersion = dataVersion;
+        this.votingWindow = votingWindow;
+        this.objectMapper = objectMapper;
+        //only committed data gets into the snapshot
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.transactionTemplate.setReadOnly(true);
+        this.minRebuildIntervalNanos = minRebuildInterval.toNanos();
+    }
+
+    //the next read builds a new snapshot, without serving this one meanwhile
+    public void invalidate() {
+        stale.set(true);
+        snapshot = null;
+    }
+
+    public Snapshot get() {
+        LocalDate today = votingWindow.today();
+        Snapshot current = snapshot;
+        if (current != null && !current.date.equals(today)) {
+            current = null;
+        }
+        if (current != null && (!stale.get() || System.nanoTime() - current.builtAt < minRebuildIntervalNanos)) {
+            return current;
+        }
+        if (current == null) {
+            rebuildLock.lock();
+        } else if (!rebuildLock.tryLock()) {
+            //somebody is already rebuilding, the previous snapshot is good enough
+            return current;
+        }
+        try {
+            current = snapshot;
+            if (current == null || !current.date.equals(today) || stale.get()) {
+                //changes committed while building will mark it stale again
+                stale.set(false);
+                try {
+                    current = build(today);
+                } catch (RuntimeException e) {
+                    stale.set(true);
+                    throw e;
+                }
+                snapshot = current;
+            }
+            return current;
+        } finally {
+            rebuildLock.unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRestaurantChanged(RestaurantChangedEvent event) {
+        stale.set(true);
+    }
+
+    private Snapshot build(LocalDate date) {
+        //taken before reading, so the snapshot is never labeled newer than its data
+        long version = dataVersion.get();
+        List<RestaurantTo> restaurants = transactionTemplate.execute(status -> restaurantRepository.getAllWithVotesByDate(date));
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(restaurants);
+            return new Snapshot(date, json, gzip(json), version, System.nanoTime());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Invalid write to JSON:\n'" + restaurants + "'", e);
+        }
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    public static class Snapshot {
+
+        private final LocalDate date;
+        private final byte[] json;
+        private final byte[] gzip;
+        private final long version;
+        private final long builtAt;
+
+        private Snapshot(LocalDate date, byte[] json, byte[] gzip, long version, long builtAt) {
+            this.date = date;
+            this.json = json;
+            this.gzip = gzip;
+            this.version = version;
+            this.builtAt = builtAt;
+        }
+
+        public LocalDate getDate() {
+            return date;
+        }
+
+        //shared arrays, must not be modified
+        public byte[] getJson() {
+            return json;
+        }
+
+        public byte[] getGzip() {
+            return gzip;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.voronkov.restaurantvoter.service;
+
+import com.voronkov.restaurantvoter.to.FlightStatsTo;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Concurrent identical loads share one call: the first caller of a (name, key) runs the loader,
+ * the callers coming while it runs wait for it and get the same result or exception.
+ * Nothing is kept after the load completes. The result is handed to several threads,
+ * so loaders return objects which need no session of their own, and callers do not change them.
+ * Callers in a transaction load by themselves: a transaction may see its own uncommitted changes.
+ */
+@Component
+public class SingleFlight {
+
+    private final ConcurrentMap<List<Object>, CompletableFuture<Object>> flights = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Counters> counters = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public SingleFlight(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String name, Object key, Supplier<T> loader) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return loader.get();
+        }
+        Counters nameCounters = counters.computeIfAbsent(name, this::register);
+        nameCounters.calls.increment();
+        List<Object> flightKey = List.of(name, key);
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> running = flights.putIfAbsent(flightKey, flight);
+        if (running != null) {
+            nameCounters.coalesced.increment();
+            return (T) join(running);
+        }
+        try {
+            T result = loader.get();
+            flight.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            flights.remove(flightKey, flight);
+        }
+    }
+
+    public List<FlightStatsTo> getStats() {
+        return new TreeMap<>(counters).entrySet().stream()
+                .map(e -> new FlightStatsTo(e.getKey(), e.getValue().calls.sum(), e.getValue().coalesced.sum()))
+                .collect(Collectors.toList());
+    }
+
+    private Counters register(String name) {
+        Counters nameCounters = new Counters();
+        FunctionCounter.builder("restaurantvoter.flights.calls", nameCounters.calls, LongAdder::sum)
+                .tag("name", name)
+                .register(meterRegistry);
+        FunctionCounter.builder("restaurantvoter.flights.coalesced", nameCounters.coalesced, LongAdder::sum)
+                .description("Calls which waited for the load of another caller")
+                .tag("name", name)
+                .register(meterRegistry);
+        return nameCounters;
+    }
+
+    private static Object join(CompletableFuture<Object> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static class Counters {
+
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder coalesced = new LongAdder();
+    }
+}
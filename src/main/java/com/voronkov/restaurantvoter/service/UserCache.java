@@ -0,0 +1,122 @@
+package com.voronkov.restaurantvoter.service;
+
+import com.voronkov.restaurantvoter.model.User;
+import com.voronkov.restaurantvoter.to.CacheStatsTo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Users by id in the "users" cache and their ids by email in the "userIds" cache, see ehcache.xml.
+ * A write evicts only the user it changed. Callers always get a copy, the cached user is never handed out.
+ * Inside a read-write transaction the cache is bypassed: such a transaction may see its own uncommitted changes.
+ * A user loaded while a write was evicting is not cached: it may have been read before the write committed.
+ */
+@Component
+public class UserCache {
+
+    public static final String CACHE_NAME = "users";
+    public static final String IDS_CACHE_NAME = "userIds";
+
+    private final Cache users;
+    private final Cache ids;
+    private final CacheMonitor cacheMonitor;
+
+    //guarded by this, counts evictions
+    private long generation;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    @Autowired
+    public UserCache(CacheManager cacheManager, CacheMonitor cacheMonitor) {
+        this.users = Objects.requireNonNull(cacheManager.getCache(CACHE_NAME), "Cache " + CACHE_NAME + " is not configured");
+        this.ids = Objects.requireNonNull(cacheManager.getCache(IDS_CACHE_NAME), "Cache " + IDS_CACHE_NAME + " is not configured");
+        this.cacheMonitor = cacheMonitor;
+    }
+
+    public User get(int id, Supplier<User> loader) {
+        if (isWriting()) {
+            return loader.get();
+        }
+        User cached = users.get(id, User.class);
+        if (cached != null) {
+            hits.increment();
+            return new User(cached);
+        }
+        misses.increment();
+        long started = generation();
+        User loaded = cacheMonitor.load(CACHE_NAME, loader);
+        put(loaded, null, started);
+        return new User(loaded);
+    }
+
+    //null when there is no such user, which is not cached
+    @Nullable
+    public User getByEmail(String email, Supplier<User> loader) {
+        if (isWriting()) {
+            return loader.get();
+        }
+        Integer id = ids.get(email, Integer.class);
+        User cached = id == null ? null : users.get(id, User.class);
+        //the email may have been changed since the id was cached
+        if (cached != null && email.equals(cached.getEmail())) {
+            hits.increment();
+            return new User(cached);
+        }
+        misses.increment();
+        long started = generation();
+        User loaded = cacheMonitor.load(IDS_CACHE_NAME, loader);
+        if (loaded != null) {
+            put(loaded, email, started);
+            return new User(loaded);
+        }
+        return null;
+    }
+
+    //the id cached for the email, without loading; check it against the email of what is found by it
+    @Nullable
+    public Integer getId(String email) {
+        return ids.get(email, Integer.class);
+    }
+
+    //a wrong id only makes a miss, so it is not guarded like the users
+    public void putId(String email, int id) {
+        ids.put(email, id);
+    }
+
+    //the id by the old email stays, getByEmail checks it against the user
+    public synchronized void evict(int id) {
+        generation++;
+        users.evict(id);
+    }
+
+    public CacheStatsTo getStats() {
+        return new CacheStatsTo(CACHE_NAME, hits.sum(), misses.sum());
+    }
+
+    private synchronized long generation() {
+        return generation;
+    }
+
+    private synchronized void put(User loaded, @Nullable String email, long started) {
+        if (generation == started) {
+            users.put(loaded.getId(), new User(loaded));
+            if (email != null) {
+                ids.put(email, loaded.getId());
+            }
+        }
+    }
+
+    private static boolean isWriting() {
+        return TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    }
+}
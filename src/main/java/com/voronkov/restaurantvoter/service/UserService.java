@@ -4,62 +4,140 @@ import com.voronkov.restaurantvoter.AuthorizedUser;
 import com.voronkov.restaurantvoter.model.Role;
 import com.voronkov.restaurantvoter.model.User;
 import com.voronkov.restaurantvoter.repository.CrudUserRepository;
+import com.voronkov.restaurantvoter.repository.CrudVoteRepository;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.Cacheable;
+import com.voronkov.restaurantvoter.to.PageTo;
+import com.voronkov.restaurantvoter.to.UserTo;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpStatus;
+import org.springframework.lang.Nullable;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.voronkov.restaurantvoter.utils.TransactionUtil.afterCommit;
+import static com.voronkov.restaurantvoter.utils.TransactionUtil.afterCompletion;
 
 @Service
 public class UserService implements UserDetailsService {
 
     private final CrudUserRepository userRepository;
+    private final CrudVoteRepository voteRepository;
+    private final VoteTally voteTally;
+    private final VoterIndex voterIndex;
+    private final AuthorizedUserCache authorizedUserCache;
+    private final UserCache userCache;
+    private final SingleFlight singleFlight;
 
     @Autowired
-    public UserService(CrudUserRepository userRepository) {
+    public UserService(CrudUserRepository userRepository, CrudVoteRepository voteRepository, VoteTally voteTally, VoterIndex voterIndex,
+                       AuthorizedUserCache authorizedUserCache, UserCache userCache, SingleFlight singleFlight) {
         this.userRepository = userRepository;
+        this.voteRepository = voteRepository;
+        this.voteTally = voteTally;
+        this.voterIndex = voterIndex;
+        this.authorizedUserCache = authorizedUserCache;
+        this.userCache = userCache;
+        this.singleFlight = singleFlight;
     }
 
-    @Cacheable("users")
+    @Timed("restaurantvoter.users")
     public List<User> getAll() {
         return userRepository.findAll();
     }
 
+    //ordered by id, the cursor is the id of the last user of the previous page
+    @Transactional(readOnly = true)
+    @Timed("restaurantvoter.users")
+    public PageTo<UserTo> getPage(@Nullable String cursor, int size) {
+        int afterId = 0;
+        if (cursor != null && !cursor.isEmpty()) {
+            try {
+                afterId = Integer.parseInt(cursor);
+            } catch (NumberFormatException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+            }
+        }
+        //one extra row tells whether there is a next page
+        List<UserTo> users = userRepository.getPage(afterId, PageRequest.of(0, size + 1));
+        List<UserTo> page = users.size() > size ? new ArrayList<>(users.subList(0, size)) : users;
+        if (!page.isEmpty()) {
+            Map<Integer, UserTo> byId = page.stream().collect(Collectors.toMap(UserTo::getId, Function.identity()));
+            for (Object[] role : userRepository.getRoles(byId.keySet())) {
+                byId.get((Integer) role[0]).getRoles().add((Role) role[1]);
+            }
+        }
+        return new PageTo<>(page, users.size() > size ? String.valueOf(page.get(size - 1).getId()) : null);
+    }
+
+    @Timed("restaurantvoter.users")
     public User findById(int id) {
-        return find(id);
+        return userCache.get(id, () -> find(id));
     }
 
-    @CacheEvict(value = "users", allEntries = true)
+    @Timed("restaurantvoter.users")
     public User save(User user) {
         if (user.getId() == null) {
             Set<Role> roles = new HashSet<>();
             roles.add(Role.ROLE_USER);
             user.setRoles(roles);
         }
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        afterCommit(() -> evict(saved.getId()));
+        return saved;
     }
 
-    @CacheEvict(value = "users", allEntries = true)
+    @Timed("restaurantvoter.users")
     public void update(User user) {
         userRepository.save(user);
+        afterCommit(() -> evict(user.getId()));
     }
 
-    @CacheEvict(value = "users", allEntries = true)
+    //the user's votes are deleted with the user, only their restaurants' counters are changed in memory
+    @Transactional
+    @Timed("restaurantvoter.users")
     public void delete(int id) {
         User user = find(id);
+        //held like a vote of the user, so no vote of theirs is in flight
+        Lock lock = voterIndex.lock(id);
+        lock.lock();
+        afterCompletion(lock::unlock);
+        Map<LocalDate, Integer> choices = new HashMap<>();
+        for (Object[] row : voteRepository.getChoicesOfUser(id)) {
+            choices.put((LocalDate) row[0], (Integer) row[1]);
+        }
+        //seeds read before the commit are not installed
+        choices.keySet().forEach(voteTally::begin);
+        afterCompletion(() -> choices.keySet().forEach(voteTally::end));
         userRepository.delete(user);
+        afterCommit(() -> {
+            evict(id);
+            choices.forEach((date, restaurantId) -> {
+                voterIndex.removeChoice(date, id, restaurantId);
+                voteTally.decrement(date, restaurantId);
+            });
+        });
     }
 
+    @Timed("restaurantvoter.users")
     public User findByEmail(String email) {
-        return userRepository.findByEmail(email);
+        return userCache.getByEmail(email, () -> singleFlight.execute("userByEmail", email, () -> userRepository.findByEmail(email)));
+    }
+
+    //principals are loaded through the user cache, so it goes first
+    private void evict(int id) {
+        userCache.evict(id);
+        authorizedUserCache.evict(id);
     }
 
     private User find(int id) {
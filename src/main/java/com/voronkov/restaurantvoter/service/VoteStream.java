@@ -0,0 +1,213 @@
+package com.voronkov.restaurantvoter.service;
+
+import com.voronkov.restaurantvoter.to.VoteCountTo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pushes vote counts to the subscribers of GET /restaurants/stream.
+ * Restaurants voted for are collected and sent once per restaurantvoter.stream.window with their current counts.
+ * Every subscriber keeps only the latest unsent count per restaurant, so a slow client skips intermediate counts
+ * instead of queueing them; a client which fails to receive is dropped.
+ * A send taking longer than restaurantvoter.stream.send-timeout drops its client as well, and a thread is added
+ * to the senders until the send returns, so stuck clients do not hold up the others.
+ */
+@Component
+public class VoteStream {
+
+    private static Logger log = LoggerFactory.getLogger(VoteStream.class);
+
+    public static final String EVENT_NAME = "votes";
+
+    private final VoteTally voteTally;
+    private final long timeoutMillis;
+    private final long sendTimeoutNanos;
+    private final int senderThreads;
+    private final ThreadPoolExecutor senders;
+    //guarded by senders: sends past the send timeout, each has a thread added in its place
+    private int overdueSends;
+
+    //restaurant id -> its date
+    private final ConcurrentMap<Integer, LocalDate> changed = new ConcurrentHashMap<>();
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public VoteStream(VoteTally voteTally,
+                      @Value("${restaurantvoter.stream.timeout:PT30M}") Duration timeout,
+                      @Value("${restaurantvoter.stream.send-timeout:PT5S}") Duration sendTimeout,
+                      @Value("${restaurantvoter.stream.senders:4}") int senders) {
+        this.voteTally = voteTally;
+        this.timeoutMillis = timeout.toMillis();
+        this.sendTimeoutNanos = sendTimeout.toNanos();
+        this.senderThreads = senders;
+        this.senders = new ThreadPoolExecutor(senders, senders, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                new CustomizableThreadFactory("vote-stream-"));
+    }
+
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscriber subscriber = new Subscriber(emitter);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(e -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+        return emitter;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRestaurantChanged(RestaurantChangedEvent event) {
+        if (event.getType() == RestaurantChangedEvent.Type.VOTED && !subscribers.isEmpty()) {
+            event.getRestaurantIds().forEach(id -> changed.put(id, event.getDate()));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${restaurantvoter.stream.window:PT0.2S}")
+    public void flush() {
+        long now = System.nanoTime();
+        subscribers.forEach(subscriber -> subscriber.dropIfOverdue(now));
+        if (changed.isEmpty()) {
+            return;
+        }
+        List<VoteCountTo> counts = new ArrayList<>();
+        for (Integer id : changed.keySet()) {
+            LocalDate date = changed.remove(id);
+            if (date != null) {
+                counts.add(new VoteCountTo(id, date, voteTally.getVotes(date, id)));
+            }
+        }
+        subscribers.forEach(subscriber -> subscriber.offer(counts));
+    }
+
+    //a thread in place of one stuck in a send, removed when the send returns
+    private void addSender() {
+        synchronized (senders) {
+            overdueSends++;
+            senders.setMaximumPoolSize(senderThreads + overdueSends);
+            senders.setCorePoolSize(senderThreads + overdueSends);
+        }
+    }
+
+    private void removeSender() {
+        synchronized (senders) {
+            overdueSends--;
+            senders.setCorePoolSize(senderThreads + overdueSends);
+            senders.setMaximumPoolSize(senderThreads + overdueSends);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        senders.shutdownNow();
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+    }
+
+    private class Subscriber {
+
+        private final SseEmitter emitter;
+        //restaurant id -> the latest count not sent yet
+        private final ConcurrentMap<Integer, VoteCountTo> pending = new ConcurrentHashMap<>();
+        private final AtomicBoolean sending = new AtomicBoolean();
+
+        //guarded by this: the send writing to the client now
+        private boolean inSend;
+        private long sendStarted;
+        private boolean overdue;
+
+        private Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        private void offer(List<VoteCountTo> counts) {
+            counts.forEach(count -> pending.put(count.getId(), count));
+            schedule();
+        }
+
+        //at most one send per subscriber at a time, whatever came meanwhile goes with the next one
+        private void schedule() {
+            if (!pending.isEmpty() && sending.compareAndSet(false, true)) {
+                try {
+                    senders.execute(this::send);
+                } catch (RejectedExecutionException e) {
+                    sending.set(false);
+                }
+            }
+        }
+
+        private void send() {
+            List<VoteCountTo> batch = new ArrayList<>();
+            for (Integer id : pending.keySet()) {
+                VoteCountTo count = pending.remove(id);
+                if (count != null) {
+                    batch.add(count);
+                }
+            }
+            boolean dropped;
+            try {
+                if (!batch.isEmpty()) {
+                    sendStarted();
+                    try {
+                        emitter.send(SseEmitter.event().name(EVENT_NAME).data(batch, MediaType.APPLICATION_JSON));
+                    } finally {
+                        dropped = sendFinished();
+                    }
+                    if (dropped) {
+                        //the client took too long, it is not written to again
+                        emitter.completeWithError(
+                                new TimeoutException("Send took longer than " + Duration.ofNanos(sendTimeoutNanos)));
+                        return;
+                    }
+                }
+            } catch (IOException | IllegalStateException e) {
+                //left sending, so nothing is scheduled for it any more
+                log.debug("LOG подписчик отключен: {}", e.getMessage());
+                subscribers.remove(this);
+                emitter.completeWithError(e);
+                return;
+            }
+            sending.set(false);
+            schedule();
+        }
+
+        private synchronized void sendStarted() {
+            inSend = true;
+            sendStarted = System.nanoTime();
+        }
+
+        //returns whether the client was dropped during the send
+        private synchronized boolean sendFinished() {
+            inSend = false;
+            if (overdue) {
+                removeSender();
+            }
+            return overdue;
+        }
+
+        //the write itself can not be interrupted, it ends with the connection's write timeout
+        private synchronized void dropIfOverdue(long now) {
+            if (inSend && !overdue && now - sendStarted >= sendTimeoutNanos) {
+                overdue = true;
+                log.debug("LOG подписчик отключен: не принимает сообщения");
+                subscribers.remove(this);
+                addSender();
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.voronkov.restaurantvoter.service;
+
+import com.voronkov.restaurantvoter.model.Restaurant;
+import com.voronkov.restaurantvoter.repository.CrudVoteRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory vote counters, one per restaurant per day.
+ * Counters are seeded from the database on first read and then follow committed votes,
+ * so listing restaurants does not touch the votes collections.
+ * A vote is in flight from {@link #begin} until {@link #end}, after its deltas are added. A seed read while
+ * a vote of the day was in flight may or may not have seen it, so such a seed is returned but not installed.
+ */
+@Component
+public class VoteTally {
+
+    private final ConcurrentMap<LocalDate, Day> days = new ConcurrentHashMap<>();
+
+    private final CrudVoteRepository voteRepository;
+
+    @Autowired
+    public VoteTally(CrudVoteRepository voteRepository) {
+        this.voteRepository = voteRepository;
+    }
+
+    public int getVotes(Restaurant restaurant) {
+        return getVotes(List.of(restaurant)).getOrDefault(restaurant.getId(), 0);
+    }
+
+    public int getVotes(LocalDate date, int restaurantId) {
+        LongAdder counter = day(date).counters.get(restaurantId);
+        return counter != null ? counter.intValue() : load(Map.of(restaurantId, date)).get(restaurantId);
+    }
+
+    public Map<Integer, Integer> getVotes(Collection<Restaurant> restaurants) {
+        Map<Integer, Integer> votes = new HashMap<>();
+        Map<Integer, LocalDate> missing = new HashMap<>();
+        for (Restaurant restaurant : restaurants) {
+            LongAdder counter = day(restaurant.getCreatedDate()).counters.get(restaurant.getId());
+            if (counter == null) {
+                missing.put(restaurant.getId(), restaurant.getCreatedDate());
+            } else {
+                votes.put(restaurant.getId(), counter.intValue());
+            }
+        }
+        if (!missing.isEmpty()) {
+            votes.putAll(load(missing));
+        }
+        return votes;
+    }
+
+    //called in the vote's transaction after its counters are read, end is called when the transaction completes
+    public void begin(LocalDate date) {
+        day(date).begin();
+    }
+
+    public void end(LocalDate date) {
+        day(date).end();
+    }
+
+    public void increment(LocalDate date, int restaurantId) {
+        add(date, restaurantId, 1);
+    }
+
+    public void decrement(LocalDate date, int restaurantId) {
+        add(date, restaurantId, -1);
+    }
+
+    public void remove(Restaurant restaurant) {
+        day(restaurant.getCreatedDate()).counters.remove(restaurant.getId());
+    }
+
+    //the days stay, so votes in flight are still known; seeds read before are not installed
+    public void clear() {
+        days.values().forEach(Day::clear);
+    }
+
+    //past days are read from the database again if ever asked for, votes are only cast for today
+    public void removeBefore(LocalDate date) {
+        days.keySet().removeIf(day -> day.isBefore(date));
+    }
+
+    //counters which are not loaded yet will read the committed vote from the database
+    private void add(LocalDate date, int restaurantId, int delta) {
+        LongAdder counter = day(date).counters.get(restaurantId);
+        if (counter != null) {
+            counter.add(delta);
+        }
+    }
+
+    //restaurant id -> its date
+    private Map<Integer, Integer> load(Map<Integer, LocalDate> restaurants) {
+        Map<LocalDate, Long> stamps = new HashMap<>();
+        restaurants.values().forEach(date -> stamps.computeIfAbsent(date, d -> day(d).stamp()));
+        Map<Integer, Long> counts = new HashMap<>();
+        for (Object[] row : voteRepository.countVotes(restaurants.keySet())) {
+            counts.put((Integer) row[0], (Long) row[1]);
+        }
+        Map<Integer, Integer> loaded = new HashMap<>();
+        restaurants.forEach((id, date) -> {
+            LongAdder seed = new LongAdder();
+            seed.add(counts.getOrDefault(id, 0L));
+            loaded.put(id, day(date).install(id, seed, stamps.get(date)).intValue());
+        });
+        return loaded;
+    }
+
+    private Day day(LocalDate date) {
+        return days.computeIfAbsent(date, d -> new Day());
+    }
+
+    private static class Day {
+
+        private static final long IN_FLIGHT = -1;
+
+        private final ConcurrentMap<Integer, LongAdder> counters = new ConcurrentHashMap<>();
+
+        //guarded by this
+        private int inFlight;
+        private long begun;
+
+        private synchronized void begin() {
+            inFlight++;
+            begun++;
+        }
+
+        private synchronized void end() {
+            inFlight--;
+        }
+
+        //counts as a vote, so a seed stamped before does not match any more
+        private synchronized void clear() {
+            counters.clear();
+            begun++;
+        }
+
+        //taken before the seed is read
+        private synchronized long stamp() {
+            return inFlight == 0 ? begun : IN_FLIGHT;
+        }
+
+        //no vote was in flight since the stamp, so the seed holds every vote whose deltas were added before
+        private synchronized LongAdder install(int restaurantId, LongAdder seed, long stamp) {
+            if (stamp == IN_FLIGHT || inFlight != 0 || begun != stamp) {
+                LongAdder counter = counters.get(restaurantId);
+                return counter != null ? counter : seed;
+            }
+            LongAdder counter = counters.putIfAbsent(restaurantId, seed);
+            return counter != null ? counter : seed;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.voronkov.restaurantvoter.service;
+
+import com.voronkov.restaurantvoter.repository.CrudVoteRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.voronkov.restaurantvoter.model.User.USER_SEQ;
+
+/**
+ * Who voted for which restaurant, per day.
+ * A day is a paged int array indexed by {@code userId - USER_SEQ} and holding the chosen restaurant id
+ * (0 - no vote), so both "voted here" and "voted anywhere" are one array read.
+ * Pages are allocated only for user ranges that have voted. A day is loaded from the database on first access
+ * and then follows committed votes.
+ * Votes of one user are serialized with {@link #lock}, held until the vote's choice is set after commit,
+ * so the choice read by a vote is the one its predecessor committed.
+ */
+@Component
+public class VoterIndex {
+
+    public static final int NO_VOTE = 0;
+
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private static final int LOCK_STRIPES = 256;
+
+    private final ConcurrentMap<LocalDate, Day> days = new ConcurrentHashMap<>();
+    private final Lock[] locks = new Lock[LOCK_STRIPES];
+
+    private final CrudVoteRepository voteRepository;
+
+    @Autowired
+    public VoterIndex(CrudVoteRepository voteRepository) {
+        this.voteRepository = voteRepository;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    //the lock of the user's votes, shared with the users of the same stripe
+    public Lock lock(int userId) {
+        return locks[Math.floorMod(userId, LOCK_STRIPES)];
+    }
+
+    public int getChoice(LocalDate date, int userId) {
+        return day(date).get(offset(userId));
+    }
+
+    public boolean hasVoted(LocalDate date, int userId) {
+        return getChoice(date, userId) != NO_VOTE;
+    }
+
+    public boolean hasVoted(LocalDate date, int userId, int restaurantId) {
+        return getChoice(date, userId) == restaurantId;
+    }
+
+    //returns the previous choice
+    public int setChoice(LocalDate date, int userId, int restaurantId) {
+        return day(date).getAndSet(offset(userId), restaurantId);
+    }
+
+    //the choice is taken back only if it is still the restaurant; a day being loaded is waited for, one not loaded reads the database
+    public void removeChoice(LocalDate date, int userId, int restaurantId) {
+        int offset = offset(userId);
+        days.computeIfPresent(date, (d, day) -> {
+            day.compareAndSet(offset, restaurantId, NO_VOTE);
+            return day;
+        });
+    }
+
+    //reads the day now rather than on its first vote
+    public void warmUp(LocalDate date) {
+        day(date);
+    }
+
+    //past days are read from the database again if ever asked for
+    public void removeBefore(LocalDate date) {
+        days.keySet().removeIf(day -> day.isBefore(date));
+    }
+
+    private Day day(LocalDate date) {
+        return days.computeIfAbsent(date, this::load);
+    }
+
+    private Day load(LocalDate date) {
+        Day day = new Day();
+        for (Object[] row : voteRepository.getChoices(date)) {
+            day.getAndSet(offset((Integer) row[0]), (Integer) row[1]);
+        }
+        return day;
+    }
+
+    private static int offset(int userId) {
+        int offset = userId - USER_SEQ;
+        if (offset < 0) {
+            throw new IllegalArgumentException("User id " + userId + " is less than " + USER_SEQ);
+        }
+        return offset;
+    }
+
+    private static class Day {
+
+        //copied on every new page, so readers never see a half-published page
+        private volatile AtomicIntegerArray[] pages = new AtomicIntegerArray[0];
+
+        int get(int offset) {
+            AtomicIntegerArray[] pages = this.pages;
+            int index = offset >>> PAGE_BITS;
+            if (index >= pages.length || pages[index] == null) {
+                return NO_VOTE;
+            }
+            return pages[index].get(offset & PAGE_MASK);
+        }
+
+        void compareAndSet(int offset, int expected, int restaurantId) {
+            AtomicIntegerArray[] pages = this.pages;
+            int index = offset >>> PAGE_BITS;
+            if (index < pages.length && pages[index] != null) {
+                pages[index].compareAndSet(offset & PAGE_MASK, expected, restaurantId);
+            }
+        }
+
+        int getAndSet(int offset, int restaurantId) {
+            return page(offset >>> PAGE_BITS).getAndSet(offset & PAGE_MASK, restaurantId);
+        }
+
+        private AtomicIntegerArray page(int index) {
+            AtomicIntegerArray[] pages = this.pages;
+            if (index < pages.length && pages[index] != null) {
+                return pages[index];
+            }
+            synchronized (this) {
+                pages = this.pages;
+                if (index < pages.length && pages[index] != null) {
+                    return pages[index];
+                }
+                pages = Arrays.copyOf(pages, Math.max(index + 1, pages.length));
+                pages[index] = new AtomicIntegerArray(PAGE_SIZE);
+                this.pages = pages;
+                return pages[index];
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.voronkov.restaurantvoter.service;
+
+import com.voronkov.restaurantvoter.repository.CrudRestaurantRepository;
+import com.voronkov.restaurantvoter.to.RestaurantTo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Restaurants of a day ordered by votes. Once the voting of the day is closed the result can not change,
+ * so it is computed once (by DayRollover at the cutoff, or on the first request) and kept.
+ * Only an admin change of that day's restaurants drops it and moves the version, which final results are tagged with.
+ */
+@Component
+public class VotingResults {
+
+    private static final Comparator<RestaurantTo> BY_VOTES =
+            Comparator.comparing(RestaurantTo::getVotes).reversed().thenComparing(RestaurantTo::getId);
+
+    private final CrudRestaurantRepository restaurantRepository;
+    private final VotingWindow votingWindow;
+    private final TransactionTemplate transactionTemplate;
+
+    private final ConcurrentMap<LocalDate, List<RestaurantTo>> frozen = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
+
+    @Autowired
+    public VotingResults(CrudRestaurantRepository restaurantRepository, VotingWindow votingWindow,
+                         PlatformTransactionManager transactionManager) {
+        this.restaurantRepository = restaurantRepository;
+        this.votingWindow = votingWindow;
+        //only committed votes get into a result
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    public List<RestaurantTo> get(LocalDate date) {
+        if (!isFinal(date)) {
+            return load(date);
+        }
+        List<RestaurantTo> result = frozen.get(date);
+        return result != null ? result : freeze(date);
+    }
+
+    public boolean isFinal(LocalDate date) {
+        return votingWindow.isClosed(date);
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    public static String toETag(long version, LocalDate date) {
+        return "\"results-" + version + "-" + date + "\"";
+    }
+
+    //empty days are not kept, so requests for arbitrary dates do not pile up
+    public List<RestaurantTo> freeze(LocalDate date) {
+        List<RestaurantTo> result = load(date);
+        if (!result.isEmpty() && isFinal(date)) {
+            List<RestaurantTo> previous = frozen.putIfAbsent(date, result);
+            return previous != null ? previous : result;
+        }
+        return result;
+    }
+
+    public void removeBefore(LocalDate date) {
+        frozen.keySet().removeIf(day -> day.isBefore(date));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRestaurantChanged(RestaurantChangedEvent event) {
+        if (event.getType() != RestaurantChangedEvent.Type.VOTED) {
+            frozen.remove(event.getDate());
+            version.incrementAndGet();
+        }
+    }
+
+    private List<RestaurantTo> load(LocalDate date) {
+        return transactionTemplate.execute(status -> {
+            try (Stream<RestaurantTo> restaurants = restaurantRepository.streamWithVotesBetween(date, date)) {
+                return restaurants.sorted(BY_VOTES).collect(Collectors.toUnmodifiableList());
+            }
+        });
+    }
+}
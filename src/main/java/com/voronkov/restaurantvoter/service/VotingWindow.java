@@ -0,0 +1,136 @@
+package com.voronkov.restaurantvoter.service;
+
+import com.voronkov.restaurantvoter.repository.CrudRestaurantRepository;
+import com.voronkov.restaurantvoter.utils.TimeUtil;
+import com.voronkov.restaurantvoter.utils.exception.DontCanVoteException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides whether a vote may be taken without going to the database: today's cutoff instant
+ * and the ids of today's restaurants are kept in memory. Today's ids are read once a day
+ * and then follow committed restaurant creations and deletions.
+ */
+@Component
+public class VotingWindow {
+
+    private final CrudRestaurantRepository restaurantRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Clock clock;
+
+    private volatile Day today;
+
+    @Autowired
+    public VotingWindow(CrudRestaurantRepository restaurantRepository, PlatformTransactionManager transactionManager, Clock clock) {
+        this.restaurantRepository = restaurantRepository;
+        //only committed restaurants get into the index
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.transactionTemplate.setReadOnly(true);
+        this.clock = clock;
+    }
+
+    //the date of the vote, DontCanVoteException when the restaurant is not today's or the voting time is over,
+    //404 when there is no such restaurant at all
+    public LocalDate check(int restaurantId) {
+        Instant now = clock.instant();
+        Day day = day(now);
+        if (!day.restaurantIds.contains(restaurantId)) {
+            //rare, so an unknown id may cost a query
+            if (!transactionTemplate.execute(status -> restaurantRepository.existsById(restaurantId))) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Not found");
+            }
+            throw DontCanVoteException.INSTANCE;
+        }
+        if (!now.isBefore(day.cutoff)) {
+            throw DontCanVoteException.INSTANCE;
+        }
+        return day.date;
+    }
+
+    public LocalDate today() {
+        return LocalDate.now(clock);
+    }
+
+    public Instant getCutoff(LocalDate date) {
+        return date.atStartOfDay().plusHours(TimeUtil.limitHourForVote).atZone(clock.getZone()).toInstant();
+    }
+
+    //no more votes can come for the date
+    public boolean isClosed(LocalDate date) {
+        return !clock.instant().isBefore(getCutoff(date));
+    }
+
+    //reads today's restaurant ids now rather than on the first vote
+    public void warmUp() {
+        day(clock.instant());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onRestaurantChanged(RestaurantChangedEvent event) {
+        Day day = today;
+        if (day == null || !day.date.equals(event.getDate())) {
+            //a day not loaded yet reads committed restaurants itself
+            return;
+        }
+        if (event.getType() == RestaurantChangedEvent.Type.CREATED) {
+            day.restaurantIds.addAll(event.getRestaurantIds());
+        } else if (event.getType() == RestaurantChangedEvent.Type.DELETED) {
+            day.restaurantIds.removeAll(event.getRestaurantIds());
+        }
+    }
+
+    private Day day(Instant now) {
+        Day day = today;
+        if (day != null && day.covers(now)) {
+            return day;
+        }
+        synchronized (this) {
+            day = today;
+            if (day == null || !day.covers(now)) {
+                LocalDate date = LocalDate.ofInstant(now, clock.getZone());
+                Set<Integer> ids = ConcurrentHashMap.newKeySet();
+                ids.addAll(transactionTemplate.execute(status -> restaurantRepository.getIdsByDate(date)));
+                day = new Day(date, ids);
+                today = day;
+            }
+            return day;
+        }
+    }
+
+    private class Day {
+
+        private final LocalDate date;
+        private final Instant start;
+        private final Instant end;
+        private final int limitHour;
+        private final Instant cutoff;
+        private final Set<Integer> restaurantIds;
+
+        private Day(LocalDate date, Set<Integer> restaurantIds) {
+            this.date = date;
+            this.start = date.atStartOfDay(clock.getZone()).toInstant();
+            this.end = date.plusDays(1).atStartOfDay(clock.getZone()).toInstant();
+            this.limitHour = TimeUtil.limitHourForVote;
+            this.cutoff = getCutoff(date);
+            this.restaurantIds = restaurantIds;
+        }
+
+        //limitHourForVote may be changed at runtime
+        private boolean covers(Instant now) {
+            return !now.isBefore(start) && now.isBefore(end) && limitHour == TimeUtil.limitHourForVote;
+        }
+    }
+}
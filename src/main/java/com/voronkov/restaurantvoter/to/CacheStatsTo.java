@@ -0,0 +1,45 @@
+package com.voronkov.restaurantvoter.to;
+
+public class CacheStatsTo {
+
+    private String name;
+    private long hits;
+    private long misses;
+    private double hitRatio;
+
+    public CacheStatsTo() {
+    }
+
+    public CacheStatsTo(String name, long hits, long misses) {
+        this.name = name;
+        this.hits = hits;
+        this.misses = misses;
+        long requests = hits + misses;
+        this.hitRatio = requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public double getHitRatio() {
+        return hitRatio;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStatsTo{" +
+                "name='" + name + '\'' +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                '}';
+    }
+}
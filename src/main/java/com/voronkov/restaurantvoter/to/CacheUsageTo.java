@@ -0,0 +1,93 @@
+package com.voronkov.restaurantvoter.to;
+
+//usage of one cache as counted by its JCache statistics, loads as timed by CacheMonitor
+public class CacheUsageTo {
+
+    private String name;
+    private long hits;
+    private long misses;
+    private double hitRatio;
+    private long puts;
+    private long removals;
+    private long evictions;
+    private long size;
+    private double averageGetMicros;
+    private long loads;
+    private double averageLoadMillis;
+
+    public CacheUsageTo() {
+    }
+
+    public CacheUsageTo(String name, long hits, long misses, long puts, long removals, long evictions,
+                        long size, double averageGetMicros, long loads, double averageLoadMillis) {
+        this.name = name;
+        this.hits = hits;
+        this.misses = misses;
+        long requests = hits + misses;
+        this.hitRatio = requests == 0 ? 0 : (double) hits / requests;
+        this.puts = puts;
+        this.removals = removals;
+        this.evictions = evictions;
+        this.size = size;
+        this.averageGetMicros = averageGetMicros;
+        this.loads = loads;
+        this.averageLoadMillis = averageLoadMillis;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public double getHitRatio() {
+        return hitRatio;
+    }
+
+    public long getPuts() {
+        return puts;
+    }
+
+    public long getRemovals() {
+        return removals;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public double getAverageGetMicros() {
+        return averageGetMicros;
+    }
+
+    public long getLoads() {
+        return loads;
+    }
+
+    public double getAverageLoadMillis() {
+        return averageLoadMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheUsageTo{" +
+                "name='" + name + '\'' +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", puts=" + puts +
+                ", evictions=" + evictions +
+                ", size=" + size +
+                ", loads=" + loads +
+                '}';
+    }
+}
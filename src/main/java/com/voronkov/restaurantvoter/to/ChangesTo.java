@@ -0,0 +1,48 @@
+package com.voronkov.restaurantvoter.to;
+
+import java.util.List;
+
+//restaurants changed after the requested version; full - the whole list, as the change log did not reach that far
+public class ChangesTo {
+
+    private long version;
+    private boolean full;
+    private List<RestaurantTo> restaurants;
+    private List<Integer> deleted;
+
+    public ChangesTo() {
+    }
+
+    public ChangesTo(long version, boolean full, List<RestaurantTo> restaurants, List<Integer> deleted) {
+        this.version = version;
+        this.full = full;
+        this.restaurants = restaurants;
+        this.deleted = deleted;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isFull() {
+        return full;
+    }
+
+    public List<RestaurantTo> getRestaurants() {
+        return restaurants;
+    }
+
+    public List<Integer> getDeleted() {
+        return deleted;
+    }
+
+    @Override
+    public String toString() {
+        return "ChangesTo{" +
+                "version=" + version +
+                ", full=" + full +
+                ", restaurants=" + restaurants +
+                ", deleted=" + deleted +
+                '}';
+    }
+}
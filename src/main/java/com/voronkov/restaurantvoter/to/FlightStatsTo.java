@@ -0,0 +1,39 @@
+package com.voronkov.restaurantvoter.to;
+
+//calls of one kind of load and how many of them waited for an identical load instead of running their own
+public class FlightStatsTo {
+
+    private String name;
+    private long calls;
+    private long coalesced;
+
+    public FlightStatsTo() {
+    }
+
+    public FlightStatsTo(String name, long calls, long coalesced) {
+        this.name = name;
+        this.calls = calls;
+        this.coalesced = coalesced;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCalls() {
+        return calls;
+    }
+
+    public long getCoalesced() {
+        return coalesced;
+    }
+
+    @Override
+    public String toString() {
+        return "FlightStatsTo{" +
+                "name='" + name + '\'' +
+                ", calls=" + calls +
+                ", coalesced=" + coalesced +
+                '}';
+    }
+}
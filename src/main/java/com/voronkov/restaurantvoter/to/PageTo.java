@@ -0,0 +1,32 @@
+package com.voronkov.restaurantvoter.to;
+
+import java.io.Serializable;
+import java.util.List;
+
+//one page of a keyset listing, nextCursor is null on the last page
+public class PageTo<T> implements Serializable {
+
+    private final List<T> content;
+    private final String nextCursor;
+
+    public PageTo(List<T> content, String nextCursor) {
+        this.content = content;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    @Override
+    public String toString() {
+        return "PageTo{" +
+                "content=" + content +
+                ", nextCursor='" + nextCursor + '\'' +
+                '}';
+    }
+}
@@ -3,10 +3,11 @@ package com.voronkov.restaurantvoter.to;
 import com.fasterxml.jackson.annotation.JsonFormat;
 import com.voronkov.restaurantvoter.model.Restaurant;
 
+import java.io.Serializable;
 import java.time.LocalDate;
 import java.util.Objects;
 
-public class RestaurantTo {
+public class RestaurantTo implements Serializable {
 
     private Integer id;
     private String name;
@@ -32,6 +33,11 @@ public class RestaurantTo {
         this.votes = votes;
     }
 
+    //for the JPQL projections, COUNT comes back as Long
+    public RestaurantTo(Integer id, String name, LocalDate createdDate, Long votes) {
+        this(id, name, createdDate, votes.intValue());
+    }
+
     public Integer getId() {
         return id;
     }
@@ -0,0 +1,32 @@
+package com.voronkov.restaurantvoter.to;
+
+import java.time.Instant;
+
+public class TokenTo {
+
+    private String token;
+    private Instant expiresAt;
+
+    public TokenTo() {
+    }
+
+    public TokenTo(String token, Instant expiresAt) {
+        this.token = token;
+        this.expiresAt = expiresAt;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+
+    @Override
+    public String toString() {
+        return "TokenTo{" +
+                "expiresAt=" + expiresAt +
+                '}';
+    }
+}
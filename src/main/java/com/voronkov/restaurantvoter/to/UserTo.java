@@ -0,0 +1,54 @@
+package com.voronkov.restaurantvoter.to;
+
+import com.voronkov.restaurantvoter.model.Role;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+//a user as listed to the admin, without the password
+public class UserTo {
+
+    private Integer id;
+    private String email;
+    private boolean enabled;
+    private Set<Role> roles = EnumSet.noneOf(Role.class);
+
+    public UserTo() {
+    }
+
+    public UserTo(Integer id, String email, boolean enabled) {
+        this.id = id;
+        this.email = email;
+        this.enabled = enabled;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Set<Role> getRoles() {
+        return roles;
+    }
+
+    public void setRoles(Set<Role> roles) {
+        this.roles = roles;
+    }
+
+    @Override
+    public String toString() {
+        return "UserTo{" +
+                "id=" + id +
+                ", email='" + email + '\'' +
+                ", enabled=" + enabled +
+                ", roles=" + roles +
+                '}';
+    }
+}
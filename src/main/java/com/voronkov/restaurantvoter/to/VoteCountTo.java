@@ -0,0 +1,40 @@
+package com.voronkov.restaurantvoter.to;
+
+import java.time.LocalDate;
+
+public class VoteCountTo {
+
+    private Integer id;
+    private LocalDate date;
+    private Integer votes;
+
+    public VoteCountTo() {
+    }
+
+    public VoteCountTo(Integer id, LocalDate date, Integer votes) {
+        this.id = id;
+        this.date = date;
+        this.votes = votes;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public Integer getVotes() {
+        return votes;
+    }
+
+    @Override
+    public String toString() {
+        return "VoteCountTo{" +
+                "id=" + id +
+                ", date=" + date +
+                ", votes=" + votes +
+                '}';
+    }
+}
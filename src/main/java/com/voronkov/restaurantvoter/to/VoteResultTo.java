@@ -0,0 +1,42 @@
+package com.voronkov.restaurantvoter.to;
+
+import java.time.LocalDate;
+import java.util.List;
+
+//the caller's choice after a vote (null - taken back) and the counts of the restaurants it changed
+public class VoteResultTo {
+
+    private Integer restaurantId;
+    private LocalDate date;
+    private List<VoteCountTo> votes;
+
+    public VoteResultTo() {
+    }
+
+    public VoteResultTo(Integer restaurantId, LocalDate date, List<VoteCountTo> votes) {
+        this.restaurantId = restaurantId;
+        this.date = date;
+        this.votes = votes;
+    }
+
+    public Integer getRestaurantId() {
+        return restaurantId;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public List<VoteCountTo> getVotes() {
+        return votes;
+    }
+
+    @Override
+    public String toString() {
+        return "VoteResultTo{" +
+                "restaurantId=" + restaurantId +
+                ", date=" + date +
+                ", votes=" + votes +
+                '}';
+    }
+}
@@ -1,23 +1,37 @@
 package com.voronkov.restaurantvoter.utils;
 
 import com.voronkov.restaurantvoter.model.Restaurant;
+import com.voronkov.restaurantvoter.service.VoteTally;
 import com.voronkov.restaurantvoter.to.RestaurantTo;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 public class RestaurantUtil {
 
+    public static final char CURSOR_SEPARATOR = '_';
+
     private RestaurantUtil() {
     }
 
-    public static List<RestaurantTo> getRestaurantWithVotes(Collection<Restaurant> restaurants) {
-        return restaurants.stream().map(RestaurantUtil::createWithVote)
+    public static List<RestaurantTo> getRestaurantWithVotes(Collection<Restaurant> restaurants, VoteTally voteTally) {
+        Map<Integer, Integer> votes = voteTally.getVotes(restaurants);
+        return restaurants.stream().map(r -> createWithVote(r, votes.getOrDefault(r.getId(), 0)))
                 .collect(Collectors.toList());
     }
 
-    public static RestaurantTo createWithVote(Restaurant restaurant) {
-        return new RestaurantTo(restaurant, restaurant.getVotes().size());
+    public static RestaurantTo createWithVote(Restaurant restaurant, VoteTally voteTally) {
+        return createWithVote(restaurant, voteTally.getVotes(restaurant));
+    }
+
+    public static RestaurantTo createWithVote(Restaurant restaurant, int votes) {
+        return new RestaurantTo(restaurant, votes);
+    }
+
+    //keyset position of a restaurant in (date, id) order
+    public static String toCursor(RestaurantTo restaurant) {
+        return restaurant.getCreatedDate().toString() + CURSOR_SEPARATOR + restaurant.getId();
     }
 }
@@ -1,21 +1,10 @@
 package com.voronkov.restaurantvoter.utils;
 
-import com.voronkov.restaurantvoter.model.Restaurant;
-
-import java.time.LocalDate;
-import java.time.LocalDateTime;
-
 public class TimeUtil {
 
+    //votes are taken until this hour of the restaurant's day, see VotingWindow
     public static int limitHourForVote = 11;
 
     private TimeUtil() {
     }
-
-    public static boolean canVote(Restaurant restaurant) {
-        if (restaurant.getCreatedDate().isEqual(LocalDate.now())) {
-            return LocalDateTime.now().getHour() < limitHourForVote;
-        }
-        return false;
-    }
 }
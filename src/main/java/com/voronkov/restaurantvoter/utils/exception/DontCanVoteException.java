@@ -1,4 +1,11 @@
 package com.voronkov.restaurantvoter.utils.exception;
 
+//thrown for every late click, so it has no stack trace and a single instance serves them all
 public class DontCanVoteException extends RuntimeException {
+
+    public static final DontCanVoteException INSTANCE = new DontCanVoteException();
+
+    private DontCanVoteException() {
+        super("Voting time is over", null, false, false);
+    }
 }
@@ -1,5 +1,8 @@
 package com.voronkov.restaurantvoter.utils.exception;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -9,8 +12,20 @@ import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExcep
 @ControllerAdvice
 public class RestaurantExceptionHandler extends ResponseEntityExceptionHandler {
 
+    //every rejected vote ends here, wherever the voting window was checked
+    private final Counter votesRejected;
+
+    @Autowired
+    public RestaurantExceptionHandler(MeterRegistry meterRegistry) {
+        this.votesRejected = Counter.builder("restaurantvoter.votes")
+                .description("Votes by outcome")
+                .tag("result", "rejected")
+                .register(meterRegistry);
+    }
+
     @ExceptionHandler(DontCanVoteException.class)
     protected ResponseEntity<CafeException> handleDontCanVoteException() {
+        votesRejected.increment();
         return new ResponseEntity<>(new CafeException("Voting time is over"), HttpStatus.NOT_ACCEPTABLE);
     }
 
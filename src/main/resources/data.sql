@@ -1,7 +1,7 @@
+DELETE FROM votes;
 DELETE FROM user_roles;
 DELETE FROM restaurants;
 DELETE FROM users;
-DELETE FROM restaurant_votes;
 ALTER SEQUENCE USER_SEQ RESTART WITH 100000;
 
 INSERT INTO users (email, password) VALUES
@@ -28,16 +28,14 @@ INSERT INTO restaurants (name, date) VALUES
 ('360 Istanbul East', now()),
 ('Blindekuh', now());
 
-INSERT INTO restaurant_votes (restaurant_id, user_id) VALUES
-(1, 100001),
-(1, 100002),
-(6, 100000),
-(7, 100001),
-(8, 100002),
-(10, 100002),
-(9, 100000),
-(9, 100001),
-(4, 100000);
+INSERT INTO votes (user_id, vote_date, restaurant_id) VALUES
+(100001, '2019-11-10', 1),
+(100002, '2019-11-10', 1),
+(100000, '2019-11-10', 4),
+(100000, '2020-01-01', 6),
+(100001, now(), 7),
+(100002, now(), 8),
+(100000, now(), 9);
 
 INSERT  INTO meals (name, price, restaurant_id) VALUES
 ('Пицца', 60.00, 1 ),
@@ -1,7 +1,7 @@
+DROP TABLE votes IF EXISTS;
 DROP TABLE user_roles IF EXISTS;
 DROP TABLE users IF EXISTS;
 DROP TABLE restaurants IF EXISTS;
-DROP TABLE restaurant_votes IF EXISTS;
 DROP TABLE meals IF EXISTS;
 DROP SEQUENCE USER_SEQ IF EXISTS;
 DROP SEQUENCE RESTAURANT_START_SEQ IF EXISTS;
@@ -23,8 +23,10 @@ CREATE TABLE restaurants
 (
     id               INTEGER DEFAULT RESTAURANT_START_SEQ.nextval PRIMARY KEY,
     name             VARCHAR(255)            NOT NULL,
-    date             TIMESTAMP DEFAULT now() NOT NULL
+    date             DATE DEFAULT now()      NOT NULL
 );
+CREATE INDEX restaurants_date_id_idx
+    ON restaurants (date, id);
 
 CREATE TABLE MEALS
 (
@@ -34,12 +36,17 @@ CREATE TABLE MEALS
     FOREIGN KEY (restaurant_id) REFERENCES restaurants (id) ON DELETE CASCADE
 );
 
-CREATE TABLE restaurant_votes
+CREATE TABLE votes
 (
-    restaurant_id         INTEGER               NOT NULL REFERENCES restaurants (id),
-    user_id               INTEGER               NOT NULL REFERENCES users (id),
-    PRIMARY KEY (restaurant_id, user_id)
+    user_id          INTEGER                 NOT NULL,
+    vote_date        DATE                    NOT NULL,
+    restaurant_id    INTEGER                 NOT NULL,
+    PRIMARY KEY (user_id, vote_date),
+    FOREIGN KEY (user_id) REFERENCES users (id) ON DELETE CASCADE,
+    FOREIGN KEY (restaurant_id) REFERENCES restaurants (id) ON DELETE CASCADE
 );
+CREATE INDEX votes_restaurant_idx
+    ON votes (restaurant_id);
 
 CREATE TABLE user_roles
 (
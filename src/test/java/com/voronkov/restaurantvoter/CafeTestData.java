@@ -9,7 +9,6 @@ import java.time.LocalDate;
 import java.util.List;
 
 import static com.voronkov.restaurantvoter.TestUtil.readListFromJsonMvcResult;
-import static com.voronkov.restaurantvoter.UserTestData.VOTES;
 import static com.voronkov.restaurantvoter.model.Restaurant.RESTAURANT_START_SEQ;
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -33,7 +32,7 @@ public class CafeTestData {
     }
 
     public static Restaurant getUpdated() {
-        return new Restaurant(RESTAURANT_ID, "Столовая - Ромашка", LocalDate.of(2019, 11, 11), MEALS, VOTES);
+        return new Restaurant(RESTAURANT_ID, "Столовая - Ромашка", LocalDate.of(2019, 11, 11), MEALS);
     }
 
     public static void assertMatch(Restaurant actual, Restaurant expected) {
@@ -0,0 +1,131 @@
+package com.voronkov.restaurantvoter;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.math.BigInteger;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Bulk-loads a synthetic dataset of production size through batched JDBC: users, and for a range of days
+ * restaurants with meals and votes of distinct users. The same seed on the same database gives the same dataset.
+ * Rows go around the application, so generate days it has not read yet, or before it starts serving them:
+ * the voting window, the vote counters and the caches learn only about changes made through the services.
+ * <pre>
+ * DatasetGenerator generator = new DatasetGenerator(dataSource, 42);
+ * List&lt;Integer&gt; users = generator.users(1_000_000);
+ * generator.days(LocalDate.now().minusDays(364), 365, 5000, 5, 200_000, users);
+ * </pre>
+ */
+public class DatasetGenerator {
+
+    public static final String PASSWORD = "password";
+
+    private static final String[] DISHES = {"Soup", "Salad", "Steak", "Pasta", "Burger", "Fish", "Curry", "Pie", "Risotto", "Ramen"};
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Random random;
+    private final int batchSize;
+
+    public DatasetGenerator(DataSource dataSource, long seed) {
+        this(new JdbcTemplate(dataSource), seed, 1000);
+    }
+
+    public DatasetGenerator(JdbcTemplate jdbcTemplate, long seed, int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.random = new Random(seed);
+        this.batchSize = batchSize;
+    }
+
+    public static String email(int n) {
+        return "gen" + n + "@mail.ru";
+    }
+
+    //users gen<n>@mail.ru with PASSWORD and ROLE_USER, their ids in the order of n
+    public List<Integer> users(int count) {
+        Batch batch = new Batch("INSERT INTO users (email, password) VALUES (?, ?)");
+        for (int n = 0; n < count; n++) {
+            batch.add(email(n), PASSWORD);
+        }
+        batch.flush();
+        jdbcTemplate.update("INSERT INTO user_roles (role, user_id) SELECT 'ROLE_USER', id FROM users WHERE email LIKE 'gen%@mail.ru'");
+        return jdbcTemplate.queryForList("SELECT id FROM users WHERE email LIKE 'gen%@mail.ru' ORDER BY id", Integer.class);
+    }
+
+    //every day from 'from' gets its restaurants with meals, and votes of votesPerDay distinct users
+    public void days(LocalDate from, int days, int restaurantsPerDay, int mealsPerRestaurant, int votesPerDay, List<Integer> userIds) {
+        if (votesPerDay > userIds.size()) {
+            throw new IllegalArgumentException("Only " + userIds.size() + " users to vote " + votesPerDay + " times a day");
+        }
+        for (int d = 0; d < days; d++) {
+            Date date = Date.valueOf(from.plusDays(d));
+            Batch restaurants = new Batch("INSERT INTO restaurants (name, date) VALUES (?, ?)");
+            for (int r = 0; r < restaurantsPerDay; r++) {
+                restaurants.add("Gen " + d + "-" + r, date);
+            }
+            restaurants.flush();
+            List<Integer> restaurantIds = jdbcTemplate.queryForList(
+                    "SELECT id FROM restaurants WHERE date = ? AND name LIKE 'Gen %' ORDER BY id", Integer.class, date);
+
+            Batch meals = new Batch("INSERT INTO meals (name, price, restaurant_id) VALUES (?, ?, ?)");
+            for (Integer restaurantId : restaurantIds) {
+                for (int m = 0; m < mealsPerRestaurant; m++) {
+                    meals.add(DISHES[random.nextInt(DISHES.length)], (100 + random.nextInt(1900)) / 100.0, restaurantId);
+                }
+            }
+            meals.flush();
+
+            if (!restaurantIds.isEmpty()) {
+                Batch votes = new Batch("INSERT INTO votes (user_id, vote_date, restaurant_id) VALUES (?, ?, ?)");
+                //a stride coprime with the number of users visits distinct users
+                int users = userIds.size();
+                long start = random.nextInt(users);
+                long step = coprimeStep(users);
+                for (int v = 0; v < votesPerDay; v++) {
+                    int user = (int) ((start + v * step) % users);
+                    votes.add(userIds.get(user), date, restaurantIds.get(random.nextInt(restaurantIds.size())));
+                }
+                votes.flush();
+            }
+        }
+    }
+
+    private long coprimeStep(int users) {
+        if (users == 1) {
+            return 1;
+        }
+        long step;
+        do {
+            step = 1 + random.nextInt(users - 1);
+        } while (!BigInteger.valueOf(step).gcd(BigInteger.valueOf(users)).equals(BigInteger.ONE));
+        return step;
+    }
+
+    private class Batch {
+
+        private final String sql;
+        private final List<Object[]> rows = new ArrayList<>();
+
+        private Batch(String sql) {
+            this.sql = sql;
+        }
+
+        private void add(Object... row) {
+            rows.add(row);
+            if (rows.size() == batchSize) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            if (!rows.isEmpty()) {
+                jdbcTemplate.batchUpdate(sql, rows);
+                rows.clear();
+            }
+        }
+    }
+}
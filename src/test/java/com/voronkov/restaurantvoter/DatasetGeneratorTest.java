@@ -0,0 +1,58 @@
+package com.voronkov.restaurantvoter;
+
+import com.voronkov.restaurantvoter.to.RestaurantTo;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static com.voronkov.restaurantvoter.TestUtil.readListFromJsonMvcResult;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(SpringExtension.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+@Transactional
+class DatasetGeneratorTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    //days long before data.sql, nothing else reads them
+    @Test
+    @WithMockUser(roles = {"USER"})
+    void generate() throws Exception {
+        DatasetGenerator generator = new DatasetGenerator(jdbcTemplate, 42, 7);
+        List<Integer> users = generator.users(30);
+        generator.days(LocalDate.of(2000, 1, 1), 3, 4, 2, 25, users);
+
+        assertThat(users).hasSize(30);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM user_roles r JOIN users u ON u.id = r.user_id " +
+                "WHERE u.email LIKE 'gen%'", Integer.class)).isEqualTo(30);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM meals m JOIN restaurants r ON r.id = m.restaurant_id " +
+                "WHERE r.name LIKE 'Gen %'", Integer.class)).isEqualTo(24);
+
+        List<RestaurantTo> restaurants = readListFromJsonMvcResult(mockMvc.perform(get("/restaurants/filter")
+                .param("startDate", "2000-01-01")
+                .param("endDate", "2000-01-03")
+                .param("size", "100"))
+                .andExpect(status().isOk())
+                .andReturn(), RestaurantTo.class);
+        assertThat(restaurants).hasSize(12);
+        assertThat(restaurants.stream().mapToInt(RestaurantTo::getVotes).sum()).isEqualTo(75);
+    }
+}
@@ -0,0 +1,53 @@
+package com.voronkov.restaurantvoter;
+
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.extension.AfterEachCallback;
+import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.ParameterContext;
+import org.junit.jupiter.api.extension.ParameterResolver;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Counts the statements of every test, registered after SpringExtension:
+ * <pre>
+ * &#64;ExtendWith({SpringExtension.class, QueryCountExtension.class})
+ * </pre>
+ * A test method annotated with {@link QueryBudget} fails when it executes more statements,
+ * a {@link QueryCounter} parameter of a test method checks single requests.
+ */
+public class QueryCountExtension implements BeforeEachCallback, AfterEachCallback, ParameterResolver {
+
+    private static final ExtensionContext.Namespace NAMESPACE = ExtensionContext.Namespace.create(QueryCountExtension.class);
+
+    @Override
+    public void beforeEach(ExtensionContext context) {
+        counter(context);
+    }
+
+    @Override
+    public void afterEach(ExtensionContext context) {
+        context.getTestMethod()
+                .map(method -> method.getAnnotation(QueryBudget.class))
+                .ifPresent(budget -> counter(context).assertAtMost(budget.value()));
+    }
+
+    @Override
+    public boolean supportsParameter(ParameterContext parameterContext, ExtensionContext extensionContext) {
+        return parameterContext.getParameter().getType() == QueryCounter.class;
+    }
+
+    @Override
+    public Object resolveParameter(ParameterContext parameterContext, ExtensionContext extensionContext) {
+        return counter(extensionContext);
+    }
+
+    //one counter per test method, started before the test runs
+    private static QueryCounter counter(ExtensionContext context) {
+        return context.getStore(NAMESPACE).getOrComputeIfAbsent(QueryCounter.class, type ->
+                new QueryCounter(SpringExtension.getApplicationContext(context).getBean(EntityManagerFactory.class)
+                        .unwrap(SessionFactory.class).getStatistics()), QueryCounter.class);
+    }
+}
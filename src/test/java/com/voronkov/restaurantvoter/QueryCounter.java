@@ -0,0 +1,63 @@
+package com.voronkov.restaurantvoter;
+
+import org.hibernate.stat.Statistics;
+
+import java.util.concurrent.Callable;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Statements prepared by Hibernate since the start of the test or the last {@link #reset()},
+ * read from the statistics turned on by hibernate.generate_statistics. The statistics are global,
+ * so the counts are exact while tests run one at a time. Queries of JdbcTemplate are not counted.
+ * Injected into test methods by {@link QueryCountExtension}.
+ */
+public class QueryCounter {
+
+    private final Statistics statistics;
+
+    private long statements;
+    private long entityLoads;
+    private long collectionFetches;
+
+    public QueryCounter(Statistics statistics) {
+        this.statistics = statistics;
+        reset();
+    }
+
+    public void reset() {
+        statements = statistics.getPrepareStatementCount();
+        entityLoads = statistics.getEntityLoadCount();
+        collectionFetches = statistics.getCollectionFetchCount();
+    }
+
+    public long getCount() {
+        return statistics.getPrepareStatementCount() - statements;
+    }
+
+    //runs the action, e.g. one MockMvc request, and checks it executed at most max statements; the counts of the test go on
+    public <T> T expectAtMost(int max, Callable<T> action) throws Exception {
+        return expectBetween(0, max, action);
+    }
+
+    //the same with a lower bound, so an action answered from a cache does not pass for a cheap query
+    public <T> T expectBetween(int min, int max, Callable<T> action) throws Exception {
+        QueryCounter actionCounter = new QueryCounter(statistics);
+        T result = action.call();
+        actionCounter.assertBetween(min, max);
+        return result;
+    }
+
+    public void assertAtMost(int max) {
+        assertBetween(0, max);
+    }
+
+    public void assertBetween(int min, int max) {
+        long count = getCount();
+        //lazy loading shows up as entity loads and collection fetches
+        assertThat(count)
+                .as("%d statements executed, %d to %d expected (%d entities loaded, %d collections fetched)", count, min, max,
+                        statistics.getEntityLoadCount() - entityLoads, statistics.getCollectionFetchCount() - collectionFetches)
+                .isBetween((long) min, (long) max);
+    }
+}
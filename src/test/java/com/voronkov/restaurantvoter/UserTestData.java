@@ -6,7 +6,6 @@ import com.voronkov.restaurantvoter.utils.json.JsonUtil;
 import org.springframework.test.web.servlet.ResultMatcher;
 
 import java.util.List;
-import java.util.Set;
 
 import static com.voronkov.restaurantvoter.TestUtil.readFromJsonMvcResult;
 import static com.voronkov.restaurantvoter.TestUtil.readListFromJsonMvcResult;
@@ -21,7 +20,6 @@ public class UserTestData {
 
     public static final User ADMIN = new User(ADMIN_ID, "admin@gmail.com", "admin", Role.ROLE_USER, Role.ROLE_ADMIN);
     public static final User USER2 = new User(USER2_ID, "user@yandex.ru", "123", Role.ROLE_USER);
-    public static final Set<User> VOTES = Set.of(ADMIN);
 
     public static final User USER = new User(USER_ID, "newEmail@mail.ru", "pass", Role.ROLE_USER);
 
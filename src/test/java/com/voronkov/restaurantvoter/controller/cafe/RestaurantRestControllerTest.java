@@ -1,28 +1,84 @@
 package com.voronkov.restaurantvoter.controller.cafe;
 
+import com.voronkov.restaurantvoter.QueryBudget;
+import com.voronkov.restaurantvoter.QueryCountExtension;
+import com.voronkov.restaurantvoter.QueryCounter;
+import com.voronkov.restaurantvoter.repository.CrudVoteRepository;
+import com.voronkov.restaurantvoter.service.DataVersion;
+import com.voronkov.restaurantvoter.service.DayRollover;
+import com.voronkov.restaurantvoter.service.RestaurantChangedEvent;
+import com.voronkov.restaurantvoter.service.RestaurantPageCache;
 import com.voronkov.restaurantvoter.service.RestaurantService;
+import com.voronkov.restaurantvoter.service.RestaurantSnapshot;
+import com.voronkov.restaurantvoter.service.UserService;
+import com.voronkov.restaurantvoter.service.VoteStream;
+import com.voronkov.restaurantvoter.service.VoteTally;
+import com.voronkov.restaurantvoter.service.VoterIndex;
+import com.voronkov.restaurantvoter.service.VotingResults;
 import com.voronkov.restaurantvoter.to.RestaurantTo;
+import com.voronkov.restaurantvoter.to.VoteResultTo;
+import com.voronkov.restaurantvoter.utils.json.JsonUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
 
 import static com.voronkov.restaurantvoter.CafeTestData.*;
 import static com.voronkov.restaurantvoter.TestUtil.readFromJsonMvcResult;
+import static com.voronkov.restaurantvoter.TestUtil.userHttpBasic;
+import static com.voronkov.restaurantvoter.UserTestData.USER2;
+import static com.voronkov.restaurantvoter.UserTestData.USER2_ID;
+import static com.voronkov.restaurantvoter.UserTestData.USER_ID;
+import static com.voronkov.restaurantvoter.controller.RestaurantRestController.APPLICATION_NDJSON_VALUE;
+import static com.voronkov.restaurantvoter.controller.RestaurantRestController.NEXT_CURSOR_HEADER;
 import static com.voronkov.restaurantvoter.utils.RestaurantUtil.*;
 import static com.voronkov.restaurantvoter.utils.TimeUtil.limitHourForVote;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
-@ExtendWith(SpringExtension.class)
+@ExtendWith({SpringExtension.class, QueryCountExtension.class})
 @SpringBootTest
 @AutoConfigureMockMvc
 @Transactional
@@ -34,14 +90,149 @@ class RestaurantRestControllerTest {
     @Autowired
     private RestaurantService restaurantService;
 
+    @Autowired
+    private VoteTally voteTally;
+
+    @Autowired
+    private VoterIndex voterIndex;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private CrudVoteRepository voteRepository;
+
+    @Autowired
+    private DataVersion dataVersion;
+
+    @Autowired
+    private VoteStream voteStream;
+
+    @Autowired
+    private DayRollover dayRollover;
+
+    @Autowired
+    private RestaurantPageCache restaurantPageCache;
+
+    @Autowired
+    private RestaurantSnapshot restaurantSnapshot;
+
+    @Autowired
+    private VotingResults votingResults;
+
+    @PersistenceContext
+    private EntityManager em;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private int limitHour;
+
+    //tests move the voting time, the other tests get it back
+    @BeforeEach
+    void saveLimitHour() {
+        limitHour = limitHourForVote;
+    }
+
+    @AfterEach
+    void restoreLimitHour() {
+        limitHourForVote = limitHour;
+    }
+
     @Test
     @WithMockUser(roles = {"USER"})
     void getAll() throws Exception {
-        mockMvc.perform(MockMvcRequestBuilders.get("/restaurants"))
+        mockMvc.perform(MockMvcRequestBuilders.get("/restaurants/today"))
                 .andExpect(status().isOk())
                 .andDo(print())
                 .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
-                .andExpect(contentJson(getRestaurantWithVotes(restaurantService.getAll())));
+                .andExpect(header().doesNotExist(NEXT_CURSOR_HEADER))
+                .andExpect(contentJson(getTodayNewestFirst()));
+    }
+
+    //votes are counted in the same query, not one query per restaurant
+    @Test
+    @WithMockUser(roles = {"USER"})
+    void getAllQueries(QueryCounter queries) throws Exception {
+        //earlier tests may have left these requests cached, the test transaction never commits, so it is announced by hand
+        restaurantSnapshot.invalidate();
+        for (LocalDate date : List.of(LocalDate.now(), LocalDate.of(2019, 11, 10))) {
+            restaurantPageCache.onRestaurantChanged(new RestaurantChangedEvent(RestaurantChangedEvent.Type.UPDATED,
+                    date, List.of()));
+        }
+        queries.expectBetween(1, 1, () -> mockMvc.perform(MockMvcRequestBuilders.get("/restaurants/today"))
+                .andExpect(status().isOk()));
+        queries.expectBetween(1, 1, () -> mockMvc.perform(MockMvcRequestBuilders.get("/restaurants").param("size", "4"))
+                .andExpect(status().isOk()));
+        queries.expectBetween(1, 1, () -> mockMvc.perform(MockMvcRequestBuilders.get("/restaurants/filter")
+                .param("startDate", "2019-11-10")
+                .param("endDate", "2019-11-10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(5)));
+    }
+
+    //the restaurant with its votes, then the restaurant and its menu
+    @Test
+    @WithMockUser(roles = {"USER"})
+    @QueryBudget(3)
+    void getQueries() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/restaurants/" + RESTAURANT_ID))
+                .andExpect(status().isOk());
+        mockMvc.perform(MockMvcRequestBuilders.get("/restaurants/meals/" + RESTAURANT_ID))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    @WithMockUser(roles = {"USER"})
+    void getAllGzip() throws Exception {
+        byte[] gzip = mockMvc.perform(MockMvcRequestBuilders.get("/restaurants/today")
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+            String json = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            assertThat(JsonUtil.readValues(json, RestaurantTo.class)).isEqualTo(getTodayNewestFirst());
+        }
+    }
+
+    //without paging parameters it is the first page of the whole history, the same as with them
+    @Test
+    @WithMockUser(roles = {"USER"})
+    void getAllFirstPage() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/restaurants"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(NEXT_CURSOR_HEADER))
+                .andExpect(contentJson(getAllNewestFirst()));
+    }
+
+    @Test
+    @WithMockUser(roles = {"USER"})
+    void getAllPaged() throws Exception {
+        List<RestaurantTo> all = getAllNewestFirst();
+        String cursor = mockMvc.perform(MockMvcRequestBuilders.get("/restaurants").param("size", "4"))
+                .andExpect(status().isOk())
+                .andExpect(contentJson(all.subList(0, 4)))
+                .andReturn().getResponse().getHeader(NEXT_CURSOR_HEADER);
+        cursor = mockMvc.perform(MockMvcRequestBuilders.get("/restaurants").param("size", "4").param("cursor", cursor))
+                .andExpect(status().isOk())
+                .andExpect(contentJson(all.subList(4, 8)))
+                .andReturn().getResponse().getHeader(NEXT_CURSOR_HEADER);
+        mockMvc.perform(MockMvcRequestBuilders.get("/restaurants").param("size", "4").param("cursor", cursor))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(NEXT_CURSOR_HEADER))
+                .andExpect(contentJson(all.subList(8, all.size())));
+    }
+
+    @Test
+    @WithMockUser(roles = {"USER"})
+    void getAllInvalidCursor() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/restaurants").param("cursor", "yesterday"))
+                .andExpect(status().isBadRequest());
     }
 
     @Test
@@ -52,7 +243,47 @@ class RestaurantRestControllerTest {
                 .andDo(print())
                 .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
                 .andExpect(result -> assertMatch(readFromJsonMvcResult(result, RestaurantTo.class),
-                        createWithVote(restaurantService.getById(RESTAURANT_ID))));
+                        createWithVote(restaurantService.getById(RESTAURANT_ID), voteTally)));
+    }
+
+    @Test
+    @WithMockUser(roles = {"USER"})
+    void getNotModified() throws Exception {
+        String etag = mockMvc.perform(MockMvcRequestBuilders.get("/restaurants/" + RESTAURANT_ID))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/restaurants/" + RESTAURANT_ID)
+                .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        //the test transaction never commits, so the change is announced by hand
+        dataVersion.onRestaurantChanged(new RestaurantChangedEvent(RestaurantChangedEvent.Type.VOTED,
+                LocalDate.now(), List.of(RESTAURANT_ID)));
+        mockMvc.perform(MockMvcRequestBuilders.get("/restaurants/" + RESTAURANT_ID)
+                .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, DataVersion.toETag(dataVersion.get())));
+    }
+
+    @Test
+    @WithMockUser(roles = {"USER"})
+    void getAllNotModified() throws Exception {
+        String etag = mockMvc.perform(MockMvcRequestBuilders.get("/restaurants/today")
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(etag).endsWith("-gzip\"");
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/restaurants/today")
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+        mockMvc.perform(MockMvcRequestBuilders.get("/restaurants/today")
+                .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk());
     }
 
     @Test
@@ -66,20 +297,268 @@ class RestaurantRestControllerTest {
     }
 
     @Test
-    @WithMockUser(roles = {"USER"})
     void vote() throws Exception{
         limitHourForVote = 24;
-        mockMvc.perform(MockMvcRequestBuilders.get("/restaurants/vote/" + RESTAURANT_FOR_VOTE))
+        //the user's vote moves from restaurant 7 to the one voted for
+        mockMvc.perform(MockMvcRequestBuilders.get("/restaurants/vote/" + RESTAURANT_FOR_VOTE)
+                .with(userHttpBasic(userService.findById(USER_ID))))
                 .andExpect(status().isOk())
                 .andDo(print())
-                .andExpect(contentJson(getRestaurantWithVotes(restaurantService.getAll())));
+                .andExpect(jsonPath("$.restaurantId").value(RESTAURANT_FOR_VOTE))
+                .andExpect(jsonPath("$.date").value(LocalDate.now().toString()))
+                .andExpect(jsonPath("$.votes[*].id").value(contains(7, RESTAURANT_FOR_VOTE)))
+                .andExpect(jsonPath("$.votes[*].votes").value(contains(0, 2)));
+        assertThat(voteRepository.getRestaurantId(USER_ID, LocalDate.now())).contains(RESTAURANT_FOR_VOTE);
+    }
+
+    @Test
+    void voteFull() throws Exception{
+        limitHourForVote = 24;
+        mockMvc.perform(MockMvcRequestBuilders.get("/restaurants/vote/" + RESTAURANT_FOR_VOTE)
+                .param("full", "true")
+                .with(userHttpBasic(userService.findById(USER_ID))))
+                .andExpect(status().isOk())
+                .andExpect(contentJson(getRestaurantWithVotes(restaurantService.getAll(), voteTally)));
+    }
+
+    @Test
+    void voteAgainTakesVoteBack() throws Exception{
+        limitHourForVote = 24;
+        mockMvc.perform(MockMvcRequestBuilders.get("/restaurants/vote/" + RESTAURANT_FOR_VOTE)
+                .with(userHttpBasic(userService.findById(USER2_ID))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.restaurantId").doesNotExist())
+                .andExpect(jsonPath("$.votes[0].votes").value(0));
+        assertThat(voteRepository.getRestaurantId(USER2_ID, LocalDate.now())).isEmpty();
+    }
+
+    //the voter and their roles are read by the login, counters and choices once per restaurant and user
+    @Test
+    void voteQueries(QueryCounter queries) throws Exception {
+        limitHourForVote = 24;
+        queries.expectAtMost(6, () -> mockMvc.perform(MockMvcRequestBuilders.get("/restaurants/vote/" + RESTAURANT_FOR_VOTE)
+                .with(userHttpBasic(USER2)))
+                .andExpect(status().isOk()));
+    }
+
+    //votes of one user are serialized, so the index and the counters end as committed
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void concurrentVotesOfOneUser() throws Exception {
+        limitHourForVote = 24;
+        LocalDate today = LocalDate.now();
+        int other = RESTAURANT_FOR_VOTE + 1;
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<VoteResultTo>> results = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                int restaurantId = i % 2 == 0 ? RESTAURANT_FOR_VOTE : other;
+                results.add(executor.submit(() -> restaurantService.vote(USER2_ID, restaurantId, today)));
+            }
+            for (Future<VoteResultTo> result : results) {
+                result.get(10, TimeUnit.SECONDS);
+            }
+            assertThat(voterIndex.getChoice(today, USER2_ID))
+                    .isEqualTo(voteRepository.getRestaurantId(USER2_ID, today).orElse(VoterIndex.NO_VOTE));
+            for (Object[] row : voteRepository.countVotes(List.of(RESTAURANT_FOR_VOTE, other))) {
+                assertThat(voteTally.getVotes(today, (Integer) row[0])).isEqualTo(((Long) row[1]).intValue());
+            }
+        } finally {
+            executor.shutdownNow();
+            //back to the vote of data.sql
+            if (voterIndex.getChoice(today, USER2_ID) != RESTAURANT_FOR_VOTE) {
+                restaurantService.vote(USER2_ID, RESTAURANT_FOR_VOTE, today);
+            }
+        }
+    }
+
+    //a seed read while a vote is in flight may miss it, so it is not kept
+    @Test
+    void voteTallyNotSeededDuringVote() {
+        LocalDate today = LocalDate.now();
+        voteTally.clear();
+        voteTally.begin(today);
+        int seeded = voteTally.getVotes(today, RESTAURANT_FOR_VOTE);
+        voteRepository.upsert(USER_ID, today, RESTAURANT_FOR_VOTE);
+        voteTally.end(today);
+        assertThat(voteTally.getVotes(today, RESTAURANT_FOR_VOTE)).isEqualTo(seeded + 1);
+        //the vote is rolled back with the test
+        voteTally.clear();
+    }
+
+    //only the deleted user's choice and counter change, nothing is read from the database again
+    @Test
+    void deleteUserTakesBackVotes(QueryCounter queries) throws Exception {
+        LocalDate today = LocalDate.now();
+        int votes = voteTally.getVotes(today, RESTAURANT_FOR_VOTE);
+        int otherVotes = voteTally.getVotes(today, RESTAURANT_FOR_VOTE - 1);
+        voterIndex.warmUp(today);
+        userService.delete(USER2_ID);
+        //the test transaction never commits, so what follows the commit is run by hand
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        try {
+            queries.expectAtMost(0, () -> {
+                assertThat(voterIndex.getChoice(today, USER2_ID)).isEqualTo(VoterIndex.NO_VOTE);
+                assertThat(voterIndex.getChoice(today, USER_ID)).isEqualTo(RESTAURANT_FOR_VOTE - 1);
+                assertThat(voteTally.getVotes(today, RESTAURANT_FOR_VOTE)).isEqualTo(votes - 1);
+                return assertThat(voteTally.getVotes(today, RESTAURANT_FOR_VOTE - 1)).isEqualTo(otherVotes);
+            });
+        } finally {
+            //the deletion is rolled back with the test
+            voterIndex.setChoice(today, USER2_ID, RESTAURANT_FOR_VOTE);
+            voteTally.increment(today, RESTAURANT_FOR_VOTE);
+        }
+    }
+
+    @Test
+    void voteKeepsSecondLevelCache() {
+        Statistics statistics = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        //a session reads only what was cached before it started
+        TransactionTemplate newSession = new TransactionTemplate(transactionManager);
+        newSession.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        newSession.execute(status -> restaurantService.getMeals(RESTAURANT_FOR_VOTE).size());
+        long hits = statistics.getSecondLevelCacheHitCount();
+
+        voteRepository.upsert(USER_ID, LocalDate.now(), RESTAURANT_FOR_VOTE);
+        //the restaurant and its menu are still cached
+        newSession.execute(status -> restaurantService.getMeals(RESTAURANT_FOR_VOTE).size());
+        assertThat(statistics.getSecondLevelCacheHitCount()).isEqualTo(hits + 2);
     }
 
     @Test
-    @WithMockUser(roles = {"USER"})
     void notCanVote() throws Exception{
-        mockMvc.perform(MockMvcRequestBuilders.get("/restaurants/vote/" + RESTAURANT_ID))
+        mockMvc.perform(MockMvcRequestBuilders.get("/restaurants/vote/" + RESTAURANT_ID)
+                .with(userHttpBasic(userService.findById(USER_ID))))
+                .andExpect(status().isNotAcceptable());
+    }
+
+    @Test
+    void notCanVoteAfterCutoff() throws Exception{
+        limitHourForVote = 0;
+        mockMvc.perform(MockMvcRequestBuilders.get("/restaurants/vote/" + RESTAURANT_FOR_VOTE)
+                .with(userHttpBasic(userService.findById(USER_ID))))
+                .andExpect(status().isNotAcceptable())
+                .andExpect(jsonPath("$.message").value("Voting time is over"));
+        assertThat(voteRepository.getRestaurantId(USER_ID, LocalDate.now())).contains(7);
+    }
+
+    @Test
+    void lateVoteCounted() throws Exception {
+        Counter rejected = meterRegistry.get("restaurantvoter.votes").tag("result", "rejected").counter();
+        double before = rejected.count();
+        limitHourForVote = 0;
+        mockMvc.perform(MockMvcRequestBuilders.get("/restaurants/vote/" + RESTAURANT_FOR_VOTE)
+                .with(userHttpBasic(userService.findById(USER_ID))))
                 .andExpect(status().isNotAcceptable());
+        assertThat(rejected.count()).isEqualTo(before + 1);
+    }
+
+    @Test
+    void voteNotFound() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/restaurants/vote/999")
+                .with(userHttpBasic(userService.findById(USER_ID))))
+                .andExpect(status().isNotFound());
+        limitHourForVote = 0;
+        mockMvc.perform(MockMvcRequestBuilders.get("/restaurants/vote/999")
+                .with(userHttpBasic(userService.findById(USER_ID))))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @WithMockUser(roles = {"USER"})
+    void stream() throws Exception {
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/restaurants/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        //the test transaction never commits, so the vote is announced by hand
+        voteStream.onRestaurantChanged(new RestaurantChangedEvent(RestaurantChangedEvent.Type.VOTED,
+                LocalDate.now(), List.of(7)));
+        voteStream.flush();
+
+        String expected = "\"id\":7,\"date\":\"" + LocalDate.now() + "\",\"votes\":1";
+        for (int i = 0; i < 50 && !result.getResponse().getContentAsString().contains(expected); i++) {
+            Thread.sleep(100);
+        }
+        assertThat(result.getResponse().getContentAsString()).contains("event:votes").contains(expected);
+        assertThat(result.getResponse().getContentType()).startsWith(MediaType.TEXT_EVENT_STREAM_VALUE);
+    }
+
+    @Test
+    @WithMockUser(roles = {"USER"})
+    void changes() throws Exception {
+        long since = dataVersion.get();
+        mockMvc.perform(MockMvcRequestBuilders.get("/restaurants/changes").param("since", String.valueOf(since)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.full").value(false))
+                .andExpect(jsonPath("$.restaurants").isEmpty());
+
+        //the test transaction never commits, so the changes are announced by hand
+        dataVersion.onRestaurantChanged(new RestaurantChangedEvent(RestaurantChangedEvent.Type.VOTED,
+                LocalDate.now(), List.of(7, 8)));
+        dataVersion.onRestaurantChanged(new RestaurantChangedEvent(RestaurantChangedEvent.Type.DELETED,
+                LocalDate.now(), List.of(1000)));
+        mockMvc.perform(MockMvcRequestBuilders.get("/restaurants/changes").param("since", String.valueOf(since)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.version").value(dataVersion.get()))
+                .andExpect(jsonPath("$.full").value(false))
+                .andExpect(jsonPath("$.restaurants[*].id").value(contains(7, 8)))
+                .andExpect(jsonPath("$.restaurants[0].votes").value(1))
+                .andExpect(jsonPath("$.deleted").value(contains(1000)));
+    }
+
+    @Test
+    @WithMockUser(roles = {"USER"})
+    void changesTooOld() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/restaurants/changes").param("since", "0"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.full").value(true))
+                .andExpect(jsonPath("$.restaurants.length()").value(11));
+    }
+
+    @Test
+    @WithMockUser(roles = {"USER"})
+    void resultsFinal() throws Exception {
+        limitHourForVote = 0;
+        dayRollover.onCutoff(LocalDate.now());
+        String etag = mockMvc.perform(MockMvcRequestBuilders.get("/restaurants/results"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=3600"))
+                .andExpect(jsonPath("$[*].id").value(contains(7, 8, 9, 10, 11)))
+                .andExpect(jsonPath("$[*].votes").value(contains(1, 1, 1, 0, 0)))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/restaurants/results")
+                .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=3600"));
+        //votes do not change a closed day
+        dataVersion.onRestaurantChanged(new RestaurantChangedEvent(RestaurantChangedEvent.Type.VOTED,
+                LocalDate.now(), List.of(RESTAURANT_FOR_VOTE)));
+        votingResults.onRestaurantChanged(new RestaurantChangedEvent(RestaurantChangedEvent.Type.VOTED,
+                LocalDate.now(), List.of(RESTAURANT_FOR_VOTE)));
+        mockMvc.perform(MockMvcRequestBuilders.get("/restaurants/results")
+                .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+
+        //a closed day can still be changed by an admin, the test transaction never commits, so it is announced by hand
+        votingResults.onRestaurantChanged(new RestaurantChangedEvent(RestaurantChangedEvent.Type.UPDATED,
+                LocalDate.now(), List.of(RESTAURANT_FOR_VOTE)));
+        mockMvc.perform(MockMvcRequestBuilders.get("/restaurants/results")
+                .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    @WithMockUser(roles = {"USER"})
+    void resultsOpen() throws Exception {
+        limitHourForVote = 24;
+        dayRollover.onMidnight(LocalDate.now());
+        mockMvc.perform(MockMvcRequestBuilders.get("/restaurants/results")
+                .param("date", LocalDate.now().toString()))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache"))
+                .andExpect(jsonPath("$.length()").value(5));
     }
 
     @Test
@@ -90,7 +569,29 @@ class RestaurantRestControllerTest {
                 .param("endDate", "2020-01-01"))
                 .andExpect(status().isOk())
                 .andDo(print())
-                .andExpect(contentJson(createWithVote(restaurantService.getById(RESTAURANT_FILTERED))));
+                .andExpect(contentJson(createWithVote(restaurantService.getById(RESTAURANT_FILTERED), voteTally)));
+    }
+
+    @Test
+    @WithMockUser(roles = {"USER"})
+    void filterCached() throws Exception {
+        LocalDate past = LocalDate.of(2019, 11, 10);
+        MockHttpServletRequestBuilder filterPast = MockMvcRequestBuilders.get("/restaurants/filter")
+                .param("startDate", past.toString())
+                .param("endDate", past.toString());
+        mockMvc.perform(filterPast).andExpect(status().isOk());
+        long misses = restaurantPageCache.getStats().getMisses();
+
+        //votes of today leave past days cached
+        restaurantPageCache.onRestaurantChanged(new RestaurantChangedEvent(RestaurantChangedEvent.Type.VOTED,
+                LocalDate.now(), List.of(RESTAURANT_FOR_VOTE)));
+        mockMvc.perform(filterPast).andExpect(status().isOk()).andExpect(jsonPath("$.length()").value(5));
+        assertThat(restaurantPageCache.getStats().getMisses()).isEqualTo(misses);
+
+        restaurantPageCache.onRestaurantChanged(new RestaurantChangedEvent(RestaurantChangedEvent.Type.UPDATED,
+                past, List.of(RESTAURANT_ID)));
+        mockMvc.perform(filterPast).andExpect(status().isOk());
+        assertThat(restaurantPageCache.getStats().getMisses()).isEqualTo(misses + 1);
     }
 
     @Test
@@ -98,7 +599,33 @@ class RestaurantRestControllerTest {
     void filterAll() throws Exception {
         mockMvc.perform(MockMvcRequestBuilders.get("/restaurants/filter?startDate=&endTime="))
                 .andExpect(status().isOk())
-                .andExpect(contentJson(getRestaurantWithVotes(restaurantService.getAll())));
+                .andExpect(contentJson(getAllNewestFirst()));
+    }
+
+    @Test
+    @WithMockUser(roles = {"USER"})
+    void filterToday() throws Exception {
+        LocalDate today = LocalDate.now();
+        mockMvc.perform(MockMvcRequestBuilders.get("/restaurants/filter")
+                .param("startDate", today.toString())
+                .param("endDate", today.toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(5));
+    }
+
+    @Test
+    @WithMockUser(roles = {"USER"})
+    void export() throws Exception {
+        String ndjson = mockMvc.perform(MockMvcRequestBuilders.get("/restaurants/filter/export")
+                .param("startDate", "2020-01-01")
+                .param("endDate", "2020-01-01"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(APPLICATION_NDJSON_VALUE))
+                .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+
+        assertThat(ndjson).endsWith("\n");
+        assertThat(JsonUtil.readValues(ndjson, RestaurantTo.class))
+                .containsExactly(createWithVote(restaurantService.getById(RESTAURANT_FILTERED), voteTally));
     }
 
     @Test
@@ -113,4 +640,16 @@ class RestaurantRestControllerTest {
         mockMvc.perform(MockMvcRequestBuilders.get("/restaurants/999"))
                 .andExpect(status().isNotFound());
     }
-}
\ No newline at end of file
+
+    private List<RestaurantTo> getAllNewestFirst() {
+        List<RestaurantTo> all = new ArrayList<>(getRestaurantWithVotes(restaurantService.getAll(), voteTally));
+        all.sort(Comparator.comparing(RestaurantTo::getCreatedDate).thenComparing(RestaurantTo::getId).reversed());
+        return all;
+    }
+
+    private List<RestaurantTo> getTodayNewestFirst() {
+        List<RestaurantTo> today = getAllNewestFirst();
+        today.removeIf(restaurant -> !restaurant.getCreatedDate().equals(LocalDate.now()));
+        return today;
+    }
+}
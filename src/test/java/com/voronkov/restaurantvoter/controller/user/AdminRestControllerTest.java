@@ -1,11 +1,24 @@
 package com.voronkov.restaurantvoter.controller.user;
 
+import com.voronkov.restaurantvoter.AuthorizedUser;
+import com.voronkov.restaurantvoter.QueryBudget;
+import com.voronkov.restaurantvoter.QueryCountExtension;
+import com.voronkov.restaurantvoter.QueryCounter;
 import com.voronkov.restaurantvoter.model.Restaurant;
 import com.voronkov.restaurantvoter.model.Role;
 import com.voronkov.restaurantvoter.model.User;
+import com.voronkov.restaurantvoter.service.AuthorizedUserCache;
+import com.voronkov.restaurantvoter.service.RestaurantPageCache;
 import com.voronkov.restaurantvoter.service.RestaurantService;
+import com.voronkov.restaurantvoter.service.SingleFlight;
 import com.voronkov.restaurantvoter.service.UserService;
+import com.voronkov.restaurantvoter.to.CacheStatsTo;
+import com.voronkov.restaurantvoter.to.CacheUsageTo;
+import com.voronkov.restaurantvoter.to.FlightStatsTo;
+import com.voronkov.restaurantvoter.to.PageTo;
+import com.voronkov.restaurantvoter.to.RestaurantTo;
 import com.voronkov.restaurantvoter.utils.json.JsonUtil;
+import com.zaxxer.hikari.HikariDataSource;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -15,26 +28,39 @@ import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Connection;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.voronkov.restaurantvoter.CafeTestData.assertMatch;
 import static com.voronkov.restaurantvoter.CafeTestData.*;
 import static com.voronkov.restaurantvoter.TestUtil.readFromJson;
+import static com.voronkov.restaurantvoter.TestUtil.readListFromJsonMvcResult;
+import static com.voronkov.restaurantvoter.TestUtil.userHttpBasic;
 import static com.voronkov.restaurantvoter.UserTestData.assertMatch;
 import static com.voronkov.restaurantvoter.UserTestData.contentJson;
 import static com.voronkov.restaurantvoter.UserTestData.*;
 import static com.voronkov.restaurantvoter.utils.json.JsonUtil.writeValue;
+import static com.voronkov.restaurantvoter.controller.RestaurantRestController.NEXT_CURSOR_HEADER;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasItems;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
-import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
-import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
-@ExtendWith(SpringExtension.class)
+@ExtendWith({SpringExtension.class, QueryCountExtension.class})
 @SpringBootTest
 @AutoConfigureMockMvc
 @Transactional
@@ -49,8 +75,18 @@ class AdminRestControllerTest {
     @Autowired
     private RestaurantService restaurantService;
 
+    @Autowired
+    private SingleFlight singleFlight;
+
+    @Autowired
+    private AuthorizedUserCache authorizedUserCache;
+
+    @Autowired
+    private HikariDataSource dataSource;
+
     private static final String REST_USER_URL = "/admin/users/";
     private static final String REST_CAFE_URL = "/admin/restaurants/";
+    private static final String REST_CACHE_URL = "/admin/cache/";
 
     //For restaurant
 
@@ -79,6 +115,8 @@ class AdminRestControllerTest {
                 .content(writeValue(updated)))
                 .andExpect(status().isNoContent());
 
+        //the date of a restaurant is never changed
+        updated.setCreatedDate(LocalDate.of(2019, 11, 10));
         assertMatch(restaurantService.getById(RESTAURANT_ID), updated);
     }
 
@@ -122,7 +160,41 @@ class AdminRestControllerTest {
         mockMvc.perform(MockMvcRequestBuilders.get(REST_USER_URL))
                 .andExpect(status().isOk())
                 .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
-                .andExpect(contentJson(userService.getAll()));
+                .andExpect(jsonPath("$[*].id").value(contains(ADMIN_ID, USER_ID, USER2_ID)))
+                .andExpect(jsonPath("$[0].roles").value(containsInAnyOrder("ROLE_USER", "ROLE_ADMIN")))
+                .andExpect(jsonPath("$[*].password").doesNotExist())
+                .andExpect(header().doesNotExist(NEXT_CURSOR_HEADER));
+    }
+
+    //roles of the whole page come in one query
+    @Test
+    @WithMockUser(roles = {"ADMIN"})
+    @QueryBudget(4)
+    void getUsersPage() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get(REST_USER_URL)
+                .param("size", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].id").value(contains(ADMIN_ID, USER_ID)))
+                .andExpect(header().string(NEXT_CURSOR_HEADER, String.valueOf(USER_ID)));
+        mockMvc.perform(MockMvcRequestBuilders.get(REST_USER_URL)
+                .param("cursor", String.valueOf(USER_ID))
+                .param("size", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].id").value(contains(USER2_ID)))
+                .andExpect(jsonPath("$[0].email").value(USER2.getEmail()))
+                .andExpect(header().doesNotExist(NEXT_CURSOR_HEADER));
+    }
+
+    @Test
+    @WithMockUser(roles = {"ADMIN"})
+    void getUsersQueries(QueryCounter queries) throws Exception {
+        queries.expectAtMost(2, () -> mockMvc.perform(MockMvcRequestBuilders.get(REST_USER_URL))
+                .andExpect(status().isOk()));
+        queries.expectAtMost(1, () -> mockMvc.perform(MockMvcRequestBuilders.get(REST_USER_URL + USER_ID))
+                .andExpect(status().isOk()));
+        queries.expectAtMost(2, () -> mockMvc.perform(MockMvcRequestBuilders.get(REST_USER_URL + "by")
+                .param("email", USER2.getEmail()))
+                .andExpect(status().isOk()));
     }
 
     @Test
@@ -190,4 +262,183 @@ class AdminRestControllerTest {
                 .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
                 .andExpect(contentJson(ADMIN));
     }
-}
\ No newline at end of file
+
+    //For caches
+
+    @Test
+    void principalsCacheHit() throws Exception {
+        User admin = userService.findById(ADMIN_ID);
+        CacheStatsTo first = readFromJson(mockMvc.perform(MockMvcRequestBuilders.get(REST_CACHE_URL + "principals")
+                .with(userHttpBasic(admin)))
+                .andExpect(status().isOk()), CacheStatsTo.class);
+        CacheStatsTo second = readFromJson(mockMvc.perform(MockMvcRequestBuilders.get(REST_CACHE_URL + "principals")
+                .with(userHttpBasic(admin)))
+                .andExpect(status().isOk()), CacheStatsTo.class);
+
+        assertThat(second.getHits()).isEqualTo(first.getHits() + 1);
+        assertThat(second.getMisses()).isEqualTo(first.getMisses());
+    }
+
+    //a principal read before a write committed is not cached over the write's eviction
+    @Test
+    void principalLoadedDuringEvictionNotCached() {
+        AuthorizedUser stale = new AuthorizedUser(userService.findById(USER2_ID));
+        authorizedUserCache.get(USER2.getEmail(), email -> {
+            authorizedUserCache.evict(USER2_ID);
+            return stale;
+        });
+        long misses = authorizedUserCache.getStats().getMisses();
+        authorizedUserCache.get(USER2.getEmail(), email -> stale);
+        assertThat(authorizedUserCache.getStats().getMisses()).isEqualTo(misses + 1);
+    }
+
+    @Test
+    @WithMockUser(roles = {"ADMIN"})
+    void cacheUsage() throws Exception {
+        CacheUsageTo before = pagesUsage();
+        restaurantService.getByDateOrBetweenDateTimes(LocalDate.of(2001, 1, 1), LocalDate.of(2001, 1, 2), null, 3);
+        restaurantService.getByDateOrBetweenDateTimes(LocalDate.of(2001, 1, 1), LocalDate.of(2001, 1, 2), null, 3);
+        CacheUsageTo after = pagesUsage();
+
+        assertThat(after.getLoads()).isEqualTo(before.getLoads() + 1);
+        assertThat(after.getHits()).isEqualTo(before.getHits() + 1);
+        assertThat(after.getMisses()).isEqualTo(before.getMisses() + 1);
+        assertThat(after.getPuts()).isEqualTo(before.getPuts() + 1);
+        assertThat(after.getSize()).isGreaterThan(0);
+    }
+
+    private CacheUsageTo pagesUsage() throws Exception {
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get(REST_CACHE_URL))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].name").value(hasItems(RestaurantPageCache.CACHE_NAME,
+                        "com.voronkov.restaurantvoter.model.Restaurant")))
+                .andReturn();
+        return readListFromJsonMvcResult(result, CacheUsageTo.class).stream()
+                .filter(usage -> usage.getName().equals(RestaurantPageCache.CACHE_NAME))
+                .findFirst().orElseThrow();
+    }
+
+    //outside of a transaction, writing transactions read users from the database
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @WithMockUser(roles = {"ADMIN"})
+    void usersCacheHit() throws Exception {
+        userService.findById(USER2_ID);
+        CacheStatsTo first = readFromJson(mockMvc.perform(MockMvcRequestBuilders.get(REST_CACHE_URL + "users"))
+                .andExpect(status().isOk()), CacheStatsTo.class);
+        assertMatch(userService.findById(USER2_ID), USER2);
+        assertMatch(userService.findByEmail(USER2.getEmail()), USER2);
+        CacheStatsTo second = readFromJson(mockMvc.perform(MockMvcRequestBuilders.get(REST_CACHE_URL + "users"))
+                .andExpect(status().isOk()), CacheStatsTo.class);
+
+        assertThat(second.getHits()).isEqualTo(first.getHits() + 1);
+        assertThat(second.getMisses()).isEqualTo(first.getMisses() + 1);
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @WithMockUser(roles = {"ADMIN"})
+    void concurrentLoadsCoalesced() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Callable<Integer> load = () -> singleFlight.execute("test", 1, () -> {
+                loads.incrementAndGet();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return 42;
+            });
+            Future<Integer> first = executor.submit(load);
+            while (loads.get() == 0) {
+                Thread.sleep(5);
+            }
+            Future<Integer> second = executor.submit(load);
+            while (coalesced("test") == 0) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo(42);
+            assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo(42);
+            assertThat(loads.get()).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+        mockMvc.perform(MockMvcRequestBuilders.get("/admin/flights"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[?(@.name == 'test')].calls").value(contains(2)))
+                .andExpect(jsonPath("$[?(@.name == 'test')].coalesced").value(contains(1)));
+    }
+
+    //the first load waits for a connection while every connection of the pool is held here, the second joins it
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void serviceLoadsCoalesced() throws Exception {
+        RestaurantTo restaurant = coalesced("restaurantWithVotes", () -> restaurantService.getWithVotes(RESTAURANT_ID));
+        assertThat(restaurant.getId()).isEqualTo(RESTAURANT_ID);
+
+        PageTo<RestaurantTo> page = coalesced(RestaurantPageCache.CACHE_NAME,
+                () -> restaurantService.getByDateOrBetweenDateTimes(LocalDate.of(2002, 1, 1), LocalDate.of(2002, 1, 2), null, 3));
+        assertThat(page.getContent()).isEmpty();
+    }
+
+    private <T> T coalesced(String name, Callable<T> load) throws Exception {
+        long coalescedBefore = coalesced(name);
+        List<Connection> held = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int i = 0; i < dataSource.getMaximumPoolSize(); i++) {
+                held.add(dataSource.getConnection());
+            }
+            Future<T> first = executor.submit(load);
+            Thread.sleep(50);
+            Future<T> second = executor.submit(load);
+            for (int i = 0; coalesced(name) == coalescedBefore; i++) {
+                assertThat(i).as("no load of %s joined", name).isLessThan(1000);
+                Thread.sleep(5);
+            }
+            for (Connection connection : held) {
+                connection.close();
+            }
+            held.clear();
+
+            T result = first.get(5, TimeUnit.SECONDS);
+            assertThat(second.get(5, TimeUnit.SECONDS)).isSameAs(result);
+            assertThat(coalesced(name)).isEqualTo(coalescedBefore + 1);
+            return result;
+        } finally {
+            for (Connection connection : held) {
+                connection.close();
+            }
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void prometheus() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/restaurants").with(userHttpBasic(USER2)))
+                .andExpect(status().isOk());
+        mockMvc.perform(MockMvcRequestBuilders.get("/actuator/prometheus").with(userHttpBasic(USER2)))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(MockMvcRequestBuilders.get("/actuator/prometheus").with(userHttpBasic(ADMIN)))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("restaurantvoter_votes_total{application=\"restaurantvoter\",result=\"rejected\",}")))
+                .andExpect(content().string(containsString("restaurantvoter_cache_gets_total{application=\"restaurantvoter\",cache=\"users\",result=\"hit\",}")))
+                .andExpect(content().string(containsString("restaurantvoter_cache_size{application=\"restaurantvoter\",cache=\"users\",}")))
+                .andExpect(content().string(containsString("restaurantvoter_restaurants_seconds_count")))
+                .andExpect(content().string(containsString("restaurantvoter_authentication_seconds_count")))
+                .andExpect(content().string(containsString("hibernate_statements_total")))
+                .andExpect(content().string(containsString("http_server_requests_seconds_count")));
+    }
+
+    private long coalesced(String name) {
+        return singleFlight.getStats().stream()
+                .filter(stats -> stats.getName().equals(name))
+                .mapToLong(FlightStatsTo::getCoalesced)
+                .sum();
+    }
+}
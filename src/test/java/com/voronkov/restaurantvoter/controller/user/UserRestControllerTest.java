@@ -1,8 +1,12 @@
 package com.voronkov.restaurantvoter.controller.user;
 
+import com.voronkov.restaurantvoter.model.Role;
+import com.voronkov.restaurantvoter.AuthorizedUser;
+import com.voronkov.restaurantvoter.configuration.TokenService;
 import com.voronkov.restaurantvoter.model.Role;
 import com.voronkov.restaurantvoter.model.User;
 import com.voronkov.restaurantvoter.service.UserService;
+import com.voronkov.restaurantvoter.to.TokenTo;
 import com.voronkov.restaurantvoter.utils.json.JsonUtil;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -11,18 +15,28 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static com.voronkov.restaurantvoter.TestUtil.readFromJson;
 import static com.voronkov.restaurantvoter.TestUtil.userHttpBasic;
 import static com.voronkov.restaurantvoter.UserTestData.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
@@ -105,4 +119,61 @@ class UserRestControllerTest {
                 .andExpect(status().isBadRequest())
                 .andDo(print());
     }
-}
\ No newline at end of file
+
+    @Test
+    void tokenAuth() throws Exception {
+        TokenTo token = readFromJson(mockMvc.perform(MockMvcRequestBuilders.post(REST_URL + "/token")
+                .with(userHttpBasic(userService.findById(USER_ID))))
+                .andExpect(status().isOk()), TokenTo.class);
+
+        mockMvc.perform(MockMvcRequestBuilders.get(REST_URL)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + token.getToken()))
+                .andExpect(status().isOk())
+                .andExpect(contentJson(userService.findById(USER_ID)));
+    }
+
+    //a token is never kept in the http session, and cannot renew itself
+    @Test
+    void tokenStateless() throws Exception {
+        TokenTo token = readFromJson(mockMvc.perform(MockMvcRequestBuilders.post(REST_URL + "/token")
+                .with(userHttpBasic(userService.findById(USER_ID))))
+                .andExpect(status().isOk()), TokenTo.class);
+
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get(REST_URL)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + token.getToken()))
+                .andExpect(status().isOk())
+                .andReturn();
+        assertThat(result.getRequest().getSession(false)).isNull();
+
+        mockMvc.perform(MockMvcRequestBuilders.post(REST_URL + "/token")
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + token.getToken()))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void forgedToken() throws Exception {
+        TokenTo token = readFromJson(mockMvc.perform(MockMvcRequestBuilders.post(REST_URL + "/token")
+                .with(userHttpBasic(userService.findById(USER_ID))))
+                .andExpect(status().isOk()), TokenTo.class);
+        String forged = token.getToken().replaceFirst("^.", token.getToken().startsWith("A") ? "B" : "A");
+
+        mockMvc.perform(MockMvcRequestBuilders.get(REST_URL)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + forged))
+                .andExpect(status().isUnauthorized());
+    }
+
+    //expiry follows the injected Clock
+    @Test
+    void tokenExpires() {
+        AtomicReference<Instant> now = new AtomicReference<>(Instant.parse("2020-01-01T10:00:00Z"));
+        Clock clock = mock(Clock.class);
+        when(clock.instant()).thenAnswer(invocation -> now.get());
+        TokenService tokenService = new TokenService("secret", Duration.ofMinutes(15), clock);
+        String token = tokenService.issue(new AuthorizedUser(USER_ID, "user@gmail.com", Set.of(Role.ROLE_USER))).getToken();
+
+        now.set(now.get().plus(Duration.ofMinutes(15)).minusSeconds(1));
+        assertThat(tokenService.verify(token)).isNotNull();
+        now.set(now.get().plusSeconds(1));
+        assertThat(tokenService.verify(token)).isNull();
+    }
+}
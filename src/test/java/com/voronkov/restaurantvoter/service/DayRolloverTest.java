@@ -0,0 +1,75 @@
+package com.voronkov.restaurantvoter.service;
+
+import com.voronkov.restaurantvoter.repository.CrudRestaurantRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+//the jobs follow the injected Clock, not the wall time the scheduler ticks on
+class DayRolloverTest {
+
+    private static final ZoneId ZONE = ZoneOffset.UTC;
+    private static final LocalDate DAY = LocalDate.of(2020, 1, 1);
+
+    private final AtomicReference<Instant> now = new AtomicReference<>(at(DAY, 10));
+    private final TaskScheduler taskScheduler = mock(TaskScheduler.class);
+    private final VotingWindow votingWindow = mock(VotingWindow.class);
+    private final VotingResults votingResults = mock(VotingResults.class);
+    private final VoteTally voteTally = mock(VoteTally.class);
+
+    private final DayRollover dayRollover = new DayRollover(clock(), taskScheduler, votingWindow, votingResults,
+            voteTally, mock(VoterIndex.class), mock(RestaurantSnapshot.class), mock(CrudRestaurantRepository.class),
+            mock(PlatformTransactionManager.class), Duration.ofSeconds(1));
+
+    @Test
+    void jobsFollowClock() {
+        when(votingWindow.getCutoff(any())).thenAnswer(invocation -> at(invocation.getArgument(0), 11));
+        dayRollover.start();
+        verify(taskScheduler).scheduleWithFixedDelay(any(Runnable.class), eq(Duration.ofSeconds(1)));
+
+        dayRollover.tick();
+        verifyNoInteractions(votingResults, voteTally);
+
+        now.set(at(DAY, 11));
+        dayRollover.tick();
+        dayRollover.tick();
+        verify(votingResults, times(1)).freeze(DAY);
+
+        now.set(at(DAY.plusDays(1), 0));
+        dayRollover.tick();
+        verify(voteTally).removeBefore(DAY.plusDays(1));
+        verify(votingResults, never()).freeze(DAY.plusDays(1));
+
+        //a jump over a whole day runs its jobs in order, none skipped
+        now.set(at(DAY.plusDays(2), 12));
+        dayRollover.tick();
+        InOrder inOrder = inOrder(votingResults, voteTally);
+        inOrder.verify(votingResults).freeze(DAY.plusDays(1));
+        inOrder.verify(voteTally).removeBefore(DAY.plusDays(2));
+        inOrder.verify(votingResults).freeze(DAY.plusDays(2));
+    }
+
+    private Clock clock() {
+        Clock clock = mock(Clock.class);
+        when(clock.getZone()).thenReturn(ZONE);
+        when(clock.instant()).thenAnswer(invocation -> now.get());
+        return clock;
+    }
+
+    private static Instant at(LocalDate date, int hour) {
+        return date.atStartOfDay(ZONE).plusHours(hour).toInstant();
+    }
+}